@@ -0,0 +1,135 @@
+package com.tradeshift.productengine.filepreparator;
+
+import com.tradeshift.productengine.filepreparator.translations.BatchingTranslator;
+import com.tradeshift.productengine.filepreparator.translations.Cache;
+import com.tradeshift.productengine.filepreparator.translations.CachingTranslator;
+import com.tradeshift.productengine.filepreparator.translations.DeduplicatingTranslator;
+import com.tradeshift.productengine.filepreparator.translations.StubTranslator;
+import com.tradeshift.productengine.filepreparator.translations.Translator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of fillTranslations in SKUs per second against StubTranslator.
+ * With warmCache the same cache is reused through the trial, so after the first invocation only cache and
+ * scheduling costs are measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FillTranslationsBenchmark {
+
+    private static final int SKU_COUNT = 1000;
+
+    @Param({"50"})
+    private int distinctDescriptions;
+
+    @Param({"4"})
+    private int instancesCount;
+
+    @Param({"40"})
+    private int threadCount;
+
+    @Param({"5"})
+    private long latencyMillis;
+
+    /**
+     * Charged when browser session switches languages pair, so pool affinity pays off as with real browsers.
+     */
+    @Param({"100"})
+    private long pageLoadMillis;
+
+    /**
+     * Share of strings skipped as timed out.
+     */
+    @Param({"0"})
+    private double errorRate;
+
+    @Param({"false", "true"})
+    private boolean batching;
+
+    @Param({"false", "true"})
+    private boolean warmCache;
+
+    private StubTranslator stubTranslator;
+    private Translator backend;
+    private File cacheFile;
+    private Cache cache;
+    private List<RowBean> rowBeans;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws IOException {
+        stubTranslator = new StubTranslator(instancesCount, latencyMillis, pageLoadMillis, errorRate, 42);
+        backend = batching
+                ? new BatchingTranslator(stubTranslator, SimpleExcelReaderExample.BATCH_SIZE,
+                        SimpleExcelReaderExample.BATCH_CHARS, SimpleExcelReaderExample.BATCH_LINGER_MILLIS)
+                : stubTranslator;
+        if (warmCache) {
+            openCache();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() throws IOException {
+        rowBeans = Workloads.catalog(SKU_COUNT, distinctDescriptions, 42);
+        if (!warmCache) {
+            openCache();
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDownInvocation() {
+        if (!warmCache) {
+            closeCache();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws IOException {
+        if (warmCache) {
+            closeCache();
+        }
+        stubTranslator.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SKU_COUNT)
+    public List<RowBean> fillTranslations() throws InterruptedException {
+        SimpleExcelReaderExample.fillTranslations(
+                new DeduplicatingTranslator(new CachingTranslator(cache, backend)), rowBeans, threadCount);
+        return rowBeans;
+    }
+
+    private void openCache() throws IOException {
+        cacheFile = File.createTempFile("translations", ".db");
+        cacheFile.deleteOnExit();
+        cache = new Cache(cacheFile.getPath(), "translations");
+    }
+
+    private void closeCache() {
+        cache.close();
+        for (String suffix : new String[] {"", ".p", ".t"}) {
+            new File(cacheFile.getPath() + suffix).delete();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.tradeshift.productengine.filepreparator;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Heap used by read catalog, in bytes per SKU, for the HashMap based row model which was used before and for
+ * RowBean. Every SKU has all configured languages, price, currency, category, uom and two images, and every cell
+ * is a new String, as cells read from Excel are.
+ *
+ * Run with: java -Xmx4g -cp target/benchmarks.jar com.tradeshift.productengine.filepreparator.RowModelFootprint [skuCount]
+ */
+public class RowModelFootprint {
+
+    private static final int DEFAULT_SKU_COUNT = 400000;
+
+    private static Object retained;
+
+    public static void main(String[] args) {
+        int skuCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SKU_COUNT;
+
+        long legacy = measure(() -> legacyCatalog(skuCount));
+        long compact = measure(() -> catalog(skuCount));
+
+        System.out.println("SKUs: " + skuCount + ", languages: " + SimpleExcelReaderExample.languages.size());
+        System.out.println("HashMap row model, bytes per SKU: " + legacy / skuCount);
+        System.out.println("RowBean, bytes per SKU: " + compact / skuCount);
+    }
+
+    private static long measure(Supplier<Object> catalog) {
+        long before = usedHeap();
+        retained = catalog.get();
+        long after = usedHeap();
+        retained = null;
+        return after - before;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static List<RowBean> catalog(int skuCount) {
+        Random random = new Random(42);
+        List<RowBean> rowBeans = new ArrayList<>(skuCount);
+        for (int i = 0; i < skuCount; i++) {
+            RowBean rowBean = new RowBean();
+            rowBean.setIdentifier(sku(i));
+            rowBean.setPrice(price(random));
+            rowBean.setCurrency(new String("EUR"));
+            rowBean.setCategory(String.valueOf(random.nextInt(50)));
+            rowBean.setUom(new String("PCS"));
+            rowBean.setImage1(image(i, 1));
+            rowBean.setImage2(image(i, 2));
+            for (String language : SimpleExcelReaderExample.languages) {
+                LanguagePart languagePart = rowBean.getLanguagePart(new String(language));
+                languagePart.setTitle(title(language, i));
+                languagePart.setDescription(description(language, random));
+            }
+            rowBeans.add(rowBean);
+        }
+        return rowBeans;
+    }
+
+    private static TreeMap<String, LegacyRowBean> legacyCatalog(int skuCount) {
+        Random random = new Random(42);
+        TreeMap<String, LegacyRowBean> rowBeans = new TreeMap<>();
+        for (int i = 0; i < skuCount; i++) {
+            LegacyRowBean rowBean = new LegacyRowBean();
+            rowBean.identifier = sku(i);
+            rowBean.price = price(random);
+            rowBean.currency = new String("EUR");
+            rowBean.category = String.valueOf(random.nextInt(50));
+            rowBean.uom = new String("PCS");
+            rowBean.image1 = image(i, 1);
+            rowBean.image2 = image(i, 2);
+            for (String language : SimpleExcelReaderExample.languages) {
+                LanguagePart languagePart = new LanguagePart();
+                languagePart.setTitle(title(language, i));
+                languagePart.setDescription(description(language, random));
+                rowBean.languageParts.put(new String(language), languagePart);
+            }
+            rowBeans.put(rowBean.identifier, rowBean);
+        }
+        return rowBeans;
+    }
+
+    private static String sku(int i) {
+        return String.format("%08d", i);
+    }
+
+    private static BigDecimal price(Random random) {
+        // as text cells of sheet, e.g. 12.50
+        return new BigDecimal(String.format("%d.%02d", random.nextInt(1000), random.nextInt(100)));
+    }
+
+    private static String image(int i, int index) {
+        return "https://images.example.com/products/large/" + i + "-" + index + ".jpg";
+    }
+
+    private static String title(String language, int i) {
+        return "Product title " + language + " " + i;
+    }
+
+    private static String description(String language, Random random) {
+        return "Description " + language + " of product family " + random.nextInt(1000);
+    }
+
+    /**
+     * Row model as it was before RowBean became compact.
+     */
+    private static class LegacyRowBean {
+        private String identifier, currency, category, image1, image2, image3, image4, image5, uom;
+        private BigDecimal price;
+        private final Map<String, LanguagePart> languageParts = new HashMap<>();
+    }
+}
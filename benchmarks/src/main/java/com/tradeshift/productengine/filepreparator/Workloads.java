@@ -0,0 +1,43 @@
+package com.tradeshift.productengine.filepreparator;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic catalogs shaped like supplier files: one origin language per SKU,
+ * descriptions repeated across variants of the same product.
+ */
+class Workloads {
+
+    private Workloads() {
+    }
+
+    /**
+     * @return RowBeans sorted by SKU, as readBeans returns them
+     */
+    static List<RowBean> catalog(int skuCount, int distinctDescriptions, long seed) {
+        Random random = new Random(seed);
+        List<RowBean> rowBeans = new ArrayList<>(skuCount);
+
+        for (int i = 0; i < skuCount; i++) {
+            RowBean rowBean = new RowBean();
+            rowBean.setIdentifier(String.format("%08d", i));
+            rowBean.setPrice(BigDecimal.valueOf(random.nextInt(100000), 2));
+            rowBean.setCurrency("EUR");
+            rowBean.setCategory(String.valueOf(random.nextInt(50)));
+            rowBean.setUom("PCS");
+            rowBean.setImage1("https://images.example.com/products/" + i + ".jpg");
+
+            LanguagePart origin = rowBean.getLanguagePart("en");
+            origin.setOrigin(true);
+            origin.setTitle("Product title number " + i);
+            origin.setDescription("Description of product family " + random.nextInt(distinctDescriptions)
+                    + " with a few more words to translate");
+
+            rowBeans.add(rowBean);
+        }
+        return rowBeans;
+    }
+}
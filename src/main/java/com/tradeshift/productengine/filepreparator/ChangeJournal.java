@@ -0,0 +1,191 @@
+package com.tradeshift.productengine.filepreparator;
+
+import org.mapdb.Atomic;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.Serializer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Remembers hash of every exported SKU, so incremental runs translate and export only new and changed SKUs.
+ *
+ * Hash covers all fields read from the sheet, so it must be taken before translations are filled.
+ * SKUs are marked after their rows are written and flushed, and the journal is committed after every chunk
+ * with lengths of output files, so a crashed run can be resumed: output is truncated to the lengths of the last
+ * commit and appended, and SKUs written by the run up to that commit are skipped.
+ * SKUs with skipped translations are marked written but not exported, so the next run translates them again.
+ */
+class ChangeJournal implements Closeable {
+
+    private static final String NO_RUN = "";
+
+    private final DB db;
+    private final Map<String, Long> exported;
+    private final Atomic.String pendingRun;
+    /**
+     * SKUs written by pending run, exported or not.
+     */
+    private final Set<String> written;
+    /**
+     * Output file lengths of pending run at the last commit.
+     */
+    private final Map<String, Long> outputLengths;
+
+    ChangeJournal(String filePath) throws IOException {
+        File dbFile = new File(filePath);
+        if (!dbFile.exists()) {
+            dbFile.createNewFile();
+        }
+
+        // write ahead log keeps journal consistent if the run is killed between commits
+        db = DBMaker.newFileDB(dbFile)
+                .make();
+
+        if (db.exists("exported")) {
+            exported = db.getHashMap("exported");
+            pendingRun = db.getAtomicString("pendingRun");
+        } else {
+            exported = db.createHashMap("exported")
+                    .keySerializer(Serializer.STRING)
+                    .valueSerializer(Serializer.LONG)
+                    .make();
+            pendingRun = db.createAtomicString("pendingRun", NO_RUN);
+        }
+        // journals of older versions have no run state
+        if (db.exists("written")) {
+            written = db.getHashSet("written");
+            outputLengths = db.getHashMap("outputLengths");
+        } else {
+            written = db.createHashSet("written")
+                    .serializer(Serializer.STRING)
+                    .make();
+            outputLengths = db.createHashMap("outputLengths")
+                    .keySerializer(Serializer.STRING)
+                    .valueSerializer(Serializer.LONG)
+                    .make();
+        }
+
+        System.out.println("Change journal loaded, SKUs count: " + exported.size()
+                + (getPendingRun() != null ? ", unfinished run: " + getPendingRun() : ""));
+    }
+
+    static long hash(RowBean rowBean) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        update(digest, rowBean.getIdentifier());
+        update(digest, rowBean.getPrice() == null ? null : rowBean.getPrice().toPlainString());
+        update(digest, rowBean.getCurrency());
+        update(digest, rowBean.getCategory());
+        update(digest, rowBean.getImage1());
+        update(digest, rowBean.getImage2());
+        update(digest, rowBean.getImage3());
+        update(digest, rowBean.getImage4());
+        update(digest, rowBean.getImage5());
+        update(digest, rowBean.getUom());
+
+        for (Map.Entry<String, LanguagePart> languageEntry : new TreeMap<>(rowBean.getLanguageParts()).entrySet()) {
+            update(digest, languageEntry.getKey());
+            update(digest, languageEntry.getValue().getTitle());
+            update(digest, languageEntry.getValue().getDescription());
+            digest.update((byte) (languageEntry.getValue().isOrigin() ? 1 : 0));
+        }
+
+        byte[] bytes = digest.digest();
+        long result = 0;
+        for (int i = 0; i < 8; i++) {
+            result = result << 8 | bytes[i] & 0xFF;
+        }
+        return result;
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value == null) {
+            digest.update((byte) 0);
+            return;
+        }
+        digest.update((byte) 1);
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    /**
+     * @return true if SKU changed since it was exported, and pending run did not write it yet
+     */
+    boolean needsExport(String identifier, long hash) {
+        Long previous = exported.get(identifier);
+        return (previous == null || previous != hash) && !written.contains(identifier);
+    }
+
+    void markWritten(String identifier) {
+        written.add(identifier);
+    }
+
+    void markExported(String identifier, long hash) {
+        exported.put(identifier, hash);
+    }
+
+    /**
+     * @return output path of run which was started and not finished, or null
+     */
+    String getPendingRun() {
+        String result = pendingRun.get();
+        return NO_RUN.equals(result) ? null : result;
+    }
+
+    /**
+     * @return output file lengths of pending run at the last commit, empty if nothing was committed
+     */
+    Map<String, Long> getOutputLengths() {
+        return new HashMap<>(outputLengths);
+    }
+
+    /**
+     * Starts run to outputPath, or resumes it if it is pending. Must be called before SKUs are filtered,
+     * as SKUs written by another unfinished run are forgotten here.
+     */
+    void startRun(String outputPath) {
+        if (!outputPath.equals(getPendingRun())) {
+            written.clear();
+            outputLengths.clear();
+        }
+        pendingRun.set(outputPath);
+        db.commit();
+    }
+
+    void finishRun() {
+        pendingRun.set(NO_RUN);
+        written.clear();
+        outputLengths.clear();
+        db.commit();
+    }
+
+    /**
+     * Commits marks together with output file lengths, which must be flushed with the marked SKUs.
+     */
+    void commit(Map<String, Long> lengths) {
+        outputLengths.clear();
+        outputLengths.putAll(lengths);
+        db.commit();
+    }
+
+    @Override
+    public void close() {
+        db.commit();
+        db.close();
+    }
+}
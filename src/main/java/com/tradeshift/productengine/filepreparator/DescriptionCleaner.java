@@ -0,0 +1,136 @@
+package com.tradeshift.productengine.filepreparator;
+
+import com.tradeshift.productengine.filepreparator.translations.LruCache;
+import org.jsoup.Jsoup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Converts HTML descriptions to text, with the same result as Jsoup.parse(html).text().
+ *
+ * Cells without markup, entities or null chars only get whitespace normalized the way Jsoup does it, without
+ * building DOM. Parsed descriptions are memoized, as variants of one product usually share description, and
+ * duplicates then share the same String.
+ */
+class DescriptionCleaner {
+
+    static final long MEMORY_CHARS = 16 * 1024 * 1024;
+    static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+
+    private static final int CHUNK_SIZE = 1000;
+    private static final char NBSP = 160;
+    private static final char ZERO_WIDTH_SPACE = 8203;
+    private static final char SOFT_HYPHEN = 173;
+
+    private static final LruCache<String, String> cleaned =
+            new LruCache<>(MEMORY_CHARS, (html, text) -> html.length() + text.length());
+    private static final AtomicLong plainCount = new AtomicLong();
+    private static final AtomicLong parsedCount = new AtomicLong();
+    private static final AtomicLong memoHits = new AtomicLong();
+
+    private DescriptionCleaner() {
+    }
+
+    static String clean(String html) {
+        if (isPlain(html)) {
+            plainCount.incrementAndGet();
+            return normalizeWhitespace(html);
+        }
+        String result = cleaned.get(html);
+        if (result != null) {
+            memoHits.incrementAndGet();
+            return result;
+        }
+        result = Jsoup.parse(html).text();
+        parsedCount.incrementAndGet();
+        cleaned.put(html, result);
+        return result;
+    }
+
+    /**
+     * Cleans descriptions of all language parts. Must be called once for read RowBeans, as cleaning of already
+     * cleaned text decodes it once more.
+     */
+    static void clean(RowBean rowBean) {
+        for (LanguagePart languagePart : rowBean.getLanguageParts().values()) {
+            if (languagePart.getDescription() != null) {
+                languagePart.setDescription(clean(languagePart.getDescription()));
+            }
+        }
+    }
+
+    /**
+     * Cleans RowBeans in chunks on THREAD_COUNT threads.
+     */
+    static void cleanAll(List<RowBean> rowBeans) {
+        ExecutorService cleaners = newExecutor();
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int start = 0; start < rowBeans.size(); start += CHUNK_SIZE) {
+                List<RowBean> chunk = rowBeans.subList(start, Math.min(start + CHUNK_SIZE, rowBeans.size()));
+                futures.add(CompletableFuture.runAsync(() -> chunk.forEach(DescriptionCleaner::clean), cleaners));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Failed to clean descriptions", e.getCause());
+        } finally {
+            cleaners.shutdown();
+        }
+        System.out.println("Descriptions cleaned, " + getStats());
+    }
+
+    static ExecutorService newExecutor() {
+        return Executors.newFixedThreadPool(THREAD_COUNT, runnable -> {
+            Thread thread = new Thread(runnable, "description-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    static String getStats() {
+        return "without markup: " + plainCount.get() + ", parsed: " + parsedCount.get()
+                + ", memoized: " + memoHits.get();
+    }
+
+    private static boolean isPlain(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '<' || c == '&' || c == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Jsoup text normalization: whitespace runs become one space, zero width space and soft hyphen are dropped,
+     * and the result is trimmed.
+     */
+    private static String normalizeWhitespace(String text) {
+        StringBuilder result = new StringBuilder(text.length());
+        boolean lastWasWhite = false;
+        boolean reachedNonWhite = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r' || c == NBSP) {
+                if (!reachedNonWhite || lastWasWhite) {
+                    continue;
+                }
+                result.append(' ');
+                lastWasWhite = true;
+            } else if (c != ZERO_WIDTH_SPACE && c != SOFT_HYPHEN) {
+                result.append(c);
+                lastWasWhite = false;
+                reachedNonWhite = true;
+            }
+        }
+        String normalized = result.toString().trim();
+        return normalized.equals(text) ? text : normalized;
+    }
+}
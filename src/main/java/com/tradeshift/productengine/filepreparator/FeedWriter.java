@@ -0,0 +1,351 @@
+package com.tradeshift.productengine.filepreparator;
+
+import au.com.bytecode.opencsv.CSVWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes feed csv through large buffers, to one file, to a file per language (feed-en.csv) or to files of at most
+ * maxRowsPerFile rows (feed-part1.csv), optionally gzipped (feed.csv.gz). Every file gets its own header.
+ *
+ * Rows of one SKU are never split between part files. write streams RowBeans in the given order, writeAll writes
+ * language files in parallel, one thread per file, keeping the order in every file.
+ * When resuming, files are truncated to the given lengths and continued without header, new parts are started
+ * after them, and files not given are written anew.
+ */
+class FeedWriter implements Closeable {
+
+    enum Split {
+        NONE, LANGUAGE, ROWS
+    }
+
+    static final int DEFAULT_MAX_ROWS_PER_FILE = 50000;
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final String[] HEADER = {"SKU*", "Language", "Name*", "Price*", "Currency", "Category",
+            "Description", "Image1", "Image2", "Image3", "Image4", "Image5", "UOM"};
+
+    private final String outputPath;
+    private final Split split;
+    private final int maxRowsPerFile;
+    private final boolean gzip;
+    private final Map<String, Long> resumeLengths;
+
+    private final Map<String, Target> targets = new LinkedHashMap<>();
+    private final Set<String> paths = new LinkedHashSet<>();
+    private final ExecutorService languageWriters;
+    private int part;
+    private long rowCount;
+
+    /**
+     * @param resumeLengths lengths of files to continue, as got from getFileLengths, or null to write new files
+     */
+    FeedWriter(String outputPath, Split split, int maxRowsPerFile, boolean gzip, Map<String, Long> resumeLengths)
+            throws IOException {
+        this.outputPath = outputPath;
+        this.split = split;
+        this.maxRowsPerFile = maxRowsPerFile;
+        this.gzip = gzip;
+        this.resumeLengths = resumeLengths;
+        this.languageWriters = split == Split.LANGUAGE
+                ? Executors.newFixedThreadPool(SimpleExcelReaderExample.languages.size(), runnable -> {
+                    Thread thread = new Thread(runnable, "feed-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                })
+                : null;
+        if (resumeLengths != null) {
+            resume();
+        }
+    }
+
+    /**
+     * Drops rows written after lengths were taken, they are written again. Files may not be written anymore,
+     * e.g. part which was full, so they are truncated here and not when opened.
+     */
+    private void resume() throws IOException {
+        for (Map.Entry<String, Long> entry : resumeLengths.entrySet()) {
+            try (FileChannel channel = FileChannel.open(new File(entry.getKey()).toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(entry.getValue());
+            }
+        }
+        if (split == Split.ROWS) {
+            while (resumeLengths.containsKey(path(partSuffix(part + 1)))) {
+                part++;
+            }
+            for (int stale = part + 1; new File(path(partSuffix(stale))).exists(); stale++) {
+                deleteStale(path(partSuffix(stale)));
+            }
+        } else if (split == Split.LANGUAGE) {
+            for (String language : SimpleExcelReaderExample.languages) {
+                deleteStale(path(language));
+            }
+        } else {
+            deleteStale(path(""));
+        }
+    }
+
+    /**
+     * Deletes file started after lengths were taken.
+     */
+    private void deleteStale(String path) throws IOException {
+        File file = new File(path);
+        if (!resumeLengths.containsKey(path) && file.exists() && !file.delete()) {
+            throw new IOException("Failed to delete " + path);
+        }
+    }
+
+    /**
+     * Writes all rows of RowBean, to the file of every language or to current part.
+     */
+    synchronized void write(RowBean rowBean) throws IOException {
+        if (split == Split.LANGUAGE) {
+            for (String language : rowBean.getLanguageParts().keySet()) {
+                Target target = target(language);
+                synchronized (target) {
+                    target.write(rowBean, language);
+                }
+            }
+            return;
+        }
+
+        Target target;
+        if (split == Split.ROWS) {
+            target = targets.isEmpty() ? null : targets.values().iterator().next();
+            int rows = rowBean.getLanguageParts().size();
+            if (target == null || target.rows > 0 && target.rows + rows > maxRowsPerFile) {
+                if (target != null) {
+                    target.close();
+                    targets.clear();
+                }
+                part++;
+                target = target(partSuffix(part));
+            }
+        } else {
+            target = target("");
+        }
+        target.write(rowBean, null);
+    }
+
+    /**
+     * Writes RowBeans in the given order, language files in parallel.
+     */
+    synchronized void writeAll(Collection<RowBean> rowBeans) throws IOException {
+        if (split != Split.LANGUAGE) {
+            for (RowBean rowBean : rowBeans) {
+                write(rowBean);
+            }
+            return;
+        }
+
+        Set<String> languages = new LinkedHashSet<>();
+        for (RowBean rowBean : rowBeans) {
+            languages.addAll(rowBean.getLanguageParts().keySet());
+        }
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (String language : languages) {
+            Target target = target(language);
+            futures.add(CompletableFuture.runAsync(() -> {
+                synchronized (target) {
+                    for (RowBean rowBean : rowBeans) {
+                        if (rowBean.getLanguageParts().containsKey(language)) {
+                            try {
+                                target.write(rowBean, language);
+                            } catch (IOException e) {
+                                throw new CompletionException(e);
+                            }
+                        }
+                    }
+                }
+            }, languageWriters));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    synchronized void flush() throws IOException {
+        for (Target target : targets.values()) {
+            target.flush();
+        }
+    }
+
+    /**
+     * @return lengths of all files written so far, to resume from. Rows must be flushed first.
+     */
+    synchronized Map<String, Long> getFileLengths() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (String path : paths) {
+            result.put(path, new File(path).length());
+        }
+        return result;
+    }
+
+    synchronized long getRowCount() {
+        long result = rowCount;
+        for (Target target : targets.values()) {
+            result += target.rows;
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (languageWriters != null) {
+            languageWriters.shutdown();
+        }
+        IOException failure = null;
+        for (Target target : targets.values()) {
+            try {
+                target.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        targets.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private Target target(String suffix) throws IOException {
+        Target result = targets.get(suffix);
+        if (result == null) {
+            result = new Target(path(suffix));
+            targets.put(suffix, result);
+        }
+        return result;
+    }
+
+    private static String partSuffix(int part) {
+        return "part" + part;
+    }
+
+    /**
+     * @return output path with "-suffix" before extension and ".gz" if gzipped
+     */
+    String path(String suffix) {
+        String result = outputPath;
+        if (!suffix.isEmpty()) {
+            int dot = result.lastIndexOf('.');
+            result = dot <= result.lastIndexOf(File.separatorChar)
+                    ? result + "-" + suffix
+                    : result.substring(0, dot) + "-" + suffix + result.substring(dot);
+        }
+        return gzip ? result + ".gz" : result;
+    }
+
+    static String formatMoney(BigDecimal value) {
+        return value.setScale(2, RoundingMode.HALF_EVEN).toPlainString();
+    }
+
+    static String formatInteger(double value) {
+        return BigDecimal.valueOf(value).setScale(0, RoundingMode.HALF_EVEN).toPlainString();
+    }
+
+    private static String getEmptyNull(String source) {
+        return source == null ? "" : source;
+    }
+
+    /**
+     * One output file. Row array is reused, as CSVWriter does not keep it.
+     */
+    private class Target implements Closeable {
+        private final CSVWriter csvWriter;
+        private final String[] row = new String[HEADER.length];
+        private long rows;
+
+        Target(String path) throws IOException {
+            File file = new File(path);
+            boolean continued = resumeLengths != null && resumeLengths.containsKey(path) && file.length() > 0;
+            OutputStream out = new FileOutputStream(file, continued);
+            paths.add(path);
+            if (gzip) {
+                // sync flush, so rows are on disk when flush returns and SKUs are marked in journal
+                out = new GZIPOutputStream(out, BUFFER_SIZE, true);
+            }
+            csvWriter = new CSVWriter(new OutputStreamWriter(new BufferedOutputStream(out, BUFFER_SIZE),
+                    StandardCharsets.UTF_8));
+            if (!continued) {
+                csvWriter.writeNext(HEADER);
+            }
+        }
+
+        /**
+         * @param language the only language to write, or null for all languages of RowBean
+         */
+        void write(RowBean rowBean, String language) throws IOException {
+            if (rowBean.getPrice() == null) {
+                throw new IllegalStateException("No price for SKU " + rowBean.getIdentifier());
+            }
+            row[0] = getEmptyNull(rowBean.getIdentifier());
+            row[3] = formatMoney(rowBean.getPrice());
+            row[4] = getEmptyNull(rowBean.getCurrency());
+            row[5] = getEmptyNull(rowBean.getCategory());
+            row[7] = getEmptyNull(rowBean.getImage1());
+            row[8] = getEmptyNull(rowBean.getImage2());
+            row[9] = getEmptyNull(rowBean.getImage3());
+            row[10] = getEmptyNull(rowBean.getImage4());
+            row[11] = getEmptyNull(rowBean.getImage5());
+            row[12] = getEmptyNull(rowBean.getUom());
+            for (Map.Entry<String, LanguagePart> languageEntry : rowBean.getLanguageParts().entrySet()) {
+                if (language != null && !language.equals(languageEntry.getKey())) {
+                    continue;
+                }
+                row[1] = getEmptyNull(languageEntry.getKey());
+                row[2] = getEmptyNull(languageEntry.getValue().getTitle());
+                row[6] = getEmptyNull(languageEntry.getValue().getDescription());
+                csvWriter.writeNext(row);
+                rows++;
+            }
+        }
+
+        /**
+         * CSVWriter hides write errors, checkError flushes and reports them.
+         */
+        void flush() throws IOException {
+            if (csvWriter.checkError()) {
+                throw new IOException("Failed to write feed");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            rowCount += rows;
+            rows = 0;
+            try {
+                flush();
+            } finally {
+                csvWriter.close();
+            }
+        }
+    }
+}
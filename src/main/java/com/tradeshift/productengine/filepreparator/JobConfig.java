@@ -0,0 +1,288 @@
+package com.tradeshift.productengine.filepreparator;
+
+import lombok.Data;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Job options, e.g. input=catalogs/ output=feeds/ threads=auto browsers=auto languages=en,sv,de,fr
+ * sourcePriority=en,de. Every option is taken from key=value argument, then from -Dkey=value, then from
+ * properties file given by config option, then default:
+ * <ul>
+ *     <li>input - spreadsheet, or directory with spreadsheets to translate one by one</li>
+ *     <li>output - feed csv, or directory for feed csv of every spreadsheet when input is directory</li>
+ *     <li>db - directory of translations cache and change journals</li>
+ *     <li>chromedriver - path to chromedriver</li>
+ *     <li>languages - comma separated codes, translations are made between all of them</li>
+ *     <li>sourcePriority - comma separated origin languages to translate from first, languages order by default</li>
+ *     <li>threads, browsers - counts, or auto to size them by cores and memory</li>
+ *     <li>shards=N shard=i - translates only SKUs of shard i, shards=N merge=true merges outputs of all shards</li>
+ *     <li>split=language or split=rows maxRows=N - splits output into files, gzip=true compresses them</li>
+ *     <li>incremental=true - exports only SKUs changed since the last run, and resumes a killed run</li>
+ *     <li>pipeline=true - writes SKUs as soon as they are translated, instead of chunk by chunk</li>
+ * </ul>
+ */
+@Data
+class JobConfig {
+
+    static final String DEFAULT_INPUT = "/home/pkonstantinov/Documents/United product list.xlsx";
+    static final String DEFAULT_OUTPUT = "/home/pkonstantinov/Documents/feed.csv";
+    static final String DEFAULT_DB_DIRECTORY = "/home/pkonstantinov/tradeshift/my-forked/importpreparator/db/";
+    static final String AUTO = "auto";
+
+    /**
+     * Memory taken by one Chrome with translate page, outside of JVM heap.
+     */
+    static final long BROWSER_MEMORY_BYTES = 512L * 1024 * 1024;
+    /**
+     * Heap growth kept out of browser memory. Max heap is often a share of all RAM, so it is bounded.
+     */
+    static final long MAX_HEAP_RESERVE_BYTES = 1024L * 1024 * 1024;
+    /**
+     * Threads mostly wait for browsers, so there are as many per browser as defaults have.
+     */
+    static final int THREADS_PER_BROWSER = SimpleExcelReaderExample.THREAD_COUNT / SimpleExcelReaderExample.SELENIUM_COUNT;
+
+    private static final List<String> KEYS = Arrays.asList("config", "input", "output", "db", "chromedriver",
+            "languages", "sourcePriority", "threads", "browsers", "shards", "shard", "merge", "split", "maxRows",
+            "gzip", "incremental", "pipeline");
+    private static final String MEMINFO_PATH = "/proc/meminfo";
+    private static final String MEM_AVAILABLE = "MemAvailable:";
+    private static final String SPREADSHEET_EXTENSION = ".xlsx";
+    private static final String EXCEL_LOCK_PREFIX = "~$";
+
+    private String input = DEFAULT_INPUT;
+    private String output = DEFAULT_OUTPUT;
+    private String dbDirectory = DEFAULT_DB_DIRECTORY;
+    private String chromedriver;
+    private List<String> languages = SimpleExcelReaderExample.DEFAULT_LANGUAGES;
+    private List<String> sourcePriority = Collections.emptyList();
+    /**
+     * 0 for auto
+     */
+    private int threads = SimpleExcelReaderExample.THREAD_COUNT;
+    /**
+     * 0 for auto
+     */
+    private int browsers = SimpleExcelReaderExample.SELENIUM_COUNT;
+    private int shards = 1;
+    private int shard;
+    private boolean merge;
+    private FeedWriter.Split split = FeedWriter.Split.NONE;
+    private int maxRows = FeedWriter.DEFAULT_MAX_ROWS_PER_FILE;
+    private boolean gzip;
+    private boolean incremental;
+    private boolean pipeline;
+
+    static JobConfig load(String[] args) throws IOException {
+        Map<String, String> arguments = new HashMap<>();
+        for (String arg : args) {
+            String option = arg.startsWith("--") ? arg.substring(2) : arg;
+            int eq = option.indexOf('=');
+            if (eq <= 0 || !KEYS.contains(option.substring(0, eq))) {
+                throw new IllegalStateException("Unknown option: " + arg + ", options are " + KEYS);
+            }
+            arguments.put(option.substring(0, eq), option.substring(eq + 1));
+        }
+
+        Properties properties = new Properties();
+        String configPath = arguments.getOrDefault("config", System.getProperty("config"));
+        if (configPath != null) {
+            try (Reader reader = new InputStreamReader(new FileInputStream(configPath), StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+            for (String key : properties.stringPropertyNames()) {
+                if (!KEYS.contains(key)) {
+                    throw new IllegalStateException("Unknown option in " + configPath + ": " + key);
+                }
+            }
+        }
+        for (String key : KEYS) {
+            String value = System.getProperty(key);
+            if (value != null) {
+                properties.setProperty(key, value);
+            }
+        }
+        properties.putAll(arguments);
+
+        JobConfig config = new JobConfig();
+        config.setInput(properties.getProperty("input", config.getInput()));
+        config.setOutput(properties.getProperty("output", config.getOutput()));
+        config.setDbDirectory(properties.getProperty("db", config.getDbDirectory()));
+        config.setChromedriver(properties.getProperty("chromedriver"));
+        if (properties.containsKey("languages")) {
+            config.setLanguages(parseLanguages(properties.getProperty("languages")));
+        }
+        if (properties.containsKey("sourcePriority")) {
+            config.setSourcePriority(parseLanguages(properties.getProperty("sourcePriority")));
+        }
+        config.setThreads(parseCount(properties, "threads", config.getThreads()));
+        config.setBrowsers(parseCount(properties, "browsers", config.getBrowsers()));
+        config.setShards(Integer.parseInt(properties.getProperty("shards", String.valueOf(config.getShards()))));
+        config.setShard(Integer.parseInt(properties.getProperty("shard", String.valueOf(config.getShard()))));
+        config.setMerge(Boolean.parseBoolean(properties.getProperty("merge")));
+        config.setSplit(FeedWriter.Split.valueOf(properties.getProperty("split", config.getSplit().name()).toUpperCase()));
+        config.setMaxRows(Integer.parseInt(properties.getProperty("maxRows", String.valueOf(config.getMaxRows()))));
+        config.setGzip(Boolean.parseBoolean(properties.getProperty("gzip")));
+        config.setIncremental(Boolean.parseBoolean(properties.getProperty("incremental")));
+        config.setPipeline(Boolean.parseBoolean(properties.getProperty("pipeline")));
+        config.validate();
+        return config;
+    }
+
+    private static List<String> parseLanguages(String value) {
+        List<String> result = new ArrayList<>();
+        for (String language : value.split(",")) {
+            if (SimpleExcelReaderExample.isBlank(language) || result.contains(language.trim())) {
+                throw new IllegalStateException("Blank or repeated language in " + value);
+            }
+            result.add(language.trim());
+        }
+        return result;
+    }
+
+    private static int parseCount(Properties properties, String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        int result = AUTO.equalsIgnoreCase(value) ? 0 : Integer.parseInt(value);
+        if (result < 0) {
+            throw new IllegalStateException("Negative " + key + ": " + value);
+        }
+        return result;
+    }
+
+    void validate() {
+        if (merge && shards <= 1) {
+            throw new IllegalStateException("Merge needs shards count");
+        }
+        if (shard < 0 || shard >= shards) {
+            throw new IllegalStateException("Shard " + shard + " is out of " + shards + " shards");
+        }
+        if (shards > 1 && pipeline) {
+            throw new IllegalStateException("Pipeline output is in sheet order and can not be merged, run shards without it");
+        }
+        if (shards > 1 && (split != FeedWriter.Split.NONE || gzip)) {
+            throw new IllegalStateException("Shard outputs are merged as single plain csv files, run shards without split and gzip");
+        }
+        if (gzip && incremental) {
+            throw new IllegalStateException("Gzip output of killed run is truncated and can not be resumed, "
+                    + "run incremental without gzip");
+        }
+        if (!languages.containsAll(sourcePriority)) {
+            throw new IllegalStateException("Source priority " + sourcePriority + " has languages out of " + languages);
+        }
+        if (shards > 1 && isDirectoryInput()) {
+            throw new IllegalStateException("Shards are supported for single input file only");
+        }
+    }
+
+    boolean isDirectoryInput() {
+        return new File(input).isDirectory();
+    }
+
+    /**
+     * @return input file, or spreadsheets of input directory sorted by name
+     */
+    List<File> getInputFiles() {
+        File inputFile = new File(input);
+        if (!inputFile.isDirectory()) {
+            return Arrays.asList(inputFile);
+        }
+        File[] files = inputFile.listFiles((directory, name) ->
+                name.endsWith(SPREADSHEET_EXTENSION) && !name.startsWith(EXCEL_LOCK_PREFIX));
+        if (files == null || files.length == 0) {
+            throw new IllegalStateException("No " + SPREADSHEET_EXTENSION + " files in " + input);
+        }
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    String getOutputPath(File inputFile) {
+        String result = isDirectoryInput() ? new File(output, baseName(inputFile) + ".csv").getPath() : output;
+        return Sharding.shardPath(result, shard, shards);
+    }
+
+    /**
+     * SKUs of different spreadsheets may clash, so every spreadsheet of directory gets its own journal.
+     */
+    String getJournalPath(File inputFile) {
+        String name = isDirectoryInput() ? "changes-" + baseName(inputFile) + ".db" : "changes.db";
+        return Sharding.shardPath(new File(dbDirectory, name).getPath(), shard, shards);
+    }
+
+    String getCachePath() {
+        return new File(dbDirectory, "translations.db").getPath();
+    }
+
+    /**
+     * @return configured count, or as many browsers as cores and available memory allow, leaving room for JVM
+     * heap to grow. Memory is sampled on every call, so the result is passed to getThreadCount.
+     */
+    int getBrowserCount() {
+        if (browsers > 0) {
+            return browsers;
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        long availableMemory = getAvailableMemory();
+        if (availableMemory <= 0) {
+            return Math.max(1, Math.min(cores, SimpleExcelReaderExample.SELENIUM_COUNT));
+        }
+        Runtime runtime = Runtime.getRuntime();
+        long heapReserve = Math.min(runtime.maxMemory() - runtime.totalMemory(), MAX_HEAP_RESERVE_BYTES);
+        long browserMemory = availableMemory - heapReserve;
+        return (int) Math.max(1, Math.min(cores, browserMemory / BROWSER_MEMORY_BYTES));
+    }
+
+    int getThreadCount(int browserCount) {
+        return threads > 0 ? threads : browserCount * THREADS_PER_BROWSER;
+    }
+
+    private static String baseName(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    /**
+     * @return memory which can be taken without swapping in bytes, counting reclaimable page cache, from
+     * /proc/meminfo on Linux, else free physical memory from JVM, or 0 if neither tells it
+     */
+    private static long getAvailableMemory() {
+        File meminfo = new File(MEMINFO_PATH);
+        if (meminfo.exists()) {
+            try {
+                for (String line : Files.readAllLines(meminfo.toPath(), StandardCharsets.US_ASCII)) {
+                    if (line.startsWith(MEM_AVAILABLE)) {
+                        // e.g. "MemAvailable:    5616096 kB"
+                        String kilobytes = line.substring(MEM_AVAILABLE.length()).replace("kB", "").trim();
+                        return Long.parseLong(kilobytes) * 1024;
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                System.out.println("Failed to read " + MEMINFO_PATH + ": " + e);
+            }
+        }
+        OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+        if (bean instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) bean).getFreePhysicalMemorySize();
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,151 @@
+package com.tradeshift.productengine.filepreparator;
+
+import com.google.gson.GsonBuilder;
+import com.tradeshift.productengine.filepreparator.translations.LatencyHistogram;
+import com.tradeshift.productengine.filepreparator.translations.MeteredTranslator;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Progress and metrics of translation job. Progress counts strings which really go to translation, as seen by
+ * MeteredTranslator, against planned strings, which are not cached and distinct, so strings per second and ETA
+ * are not distorted by cache hits.
+ *
+ * Other metrics, e.g. cache hit ratio or page loads, are added as named gauges. All of them are printed
+ * every reporting period and written as JSON summary at the end.
+ */
+class JobMetrics implements AutoCloseable {
+
+    private final MeteredTranslator meteredTranslator;
+    private final Map<String, Supplier<Object>> gauges = new LinkedHashMap<>();
+    private final AtomicLong planned = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+    private ScheduledExecutorService reporter;
+
+    JobMetrics(MeteredTranslator meteredTranslator) {
+        this.meteredTranslator = meteredTranslator;
+    }
+
+    void addPlanned(long count) {
+        planned.addAndGet(count);
+    }
+
+    JobMetrics gauge(String name, Supplier<Object> value) {
+        synchronized (gauges) {
+            gauges.put(name, value);
+        }
+        return this;
+    }
+
+    void startReporting(long periodMillis) {
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> System.out.println(getProgressLine()),
+                periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    double getStringsPerSecond() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds <= 0 ? 0 : meteredTranslator.getTranslatedCount() / seconds;
+    }
+
+    /**
+     * @return seconds until planned strings are translated at current speed, or -1 if unknown
+     */
+    long getEtaSeconds() {
+        long remaining = planned.get() - meteredTranslator.getTranslatedCount();
+        double speed = getStringsPerSecond();
+        if (planned.get() == 0 || speed <= 0) {
+            return -1;
+        }
+        return remaining <= 0 ? 0 : (long) (remaining / speed);
+    }
+
+    String getProgressLine() {
+        long translated = meteredTranslator.getTranslatedCount();
+        StringBuilder result = new StringBuilder("Progress: translated ").append(translated);
+        if (planned.get() > 0) {
+            result.append(" of ").append(planned.get())
+                    .append(String.format(" (%d%%)", Math.min(100, translated * 100 / planned.get())));
+        }
+        result.append(String.format(", strings/s: %.2f", getStringsPerSecond()))
+                .append(", ETA: ").append(formatSeconds(getEtaSeconds()))
+                .append(", failed: ").append(meteredTranslator.getFailedCount());
+        if (meteredTranslator.getFailedCount() > 0) {
+            result.append(" ").append(meteredTranslator.getSkippedCounts());
+        }
+        for (Map.Entry<String, Object> gauge : readGauges().entrySet()) {
+            result.append(", ").append(gauge.getKey()).append(": ").append(format(gauge.getValue()));
+        }
+        return result.toString();
+    }
+
+    Map<String, Object> getSummary() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("elapsedSeconds", (System.nanoTime() - startNanos) / 1000000000);
+        result.put("planned", planned.get());
+        result.put("translated", meteredTranslator.getTranslatedCount());
+        result.put("failed", meteredTranslator.getFailedCount());
+        result.put("skippedByReason", meteredTranslator.getSkippedCounts());
+        result.put("stringsPerSecond", getStringsPerSecond());
+        result.putAll(readGauges());
+
+        Map<String, Object> latencies = new LinkedHashMap<>();
+        for (Map.Entry<String, LatencyHistogram> latency : meteredTranslator.getLatencies().entrySet()) {
+            latencies.put(latency.getKey(), latency.getValue().toMap());
+        }
+        result.put("latencyByPair", latencies);
+        return result;
+    }
+
+    void writeSummary(String path) throws IOException {
+        try (Writer writer = new FileWriter(path)) {
+            new GsonBuilder().setPrettyPrinting().serializeSpecialFloatingPointValues().create()
+                    .toJson(getSummary(), writer);
+        }
+        System.out.println("Metrics summary written to " + path);
+    }
+
+    private Map<String, Object> readGauges() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        synchronized (gauges) {
+            for (Map.Entry<String, Supplier<Object>> gauge : gauges.entrySet()) {
+                result.put(gauge.getKey(), gauge.getValue().get());
+            }
+        }
+        return result;
+    }
+
+    private static String format(Object value) {
+        if (value instanceof Double || value instanceof Float) {
+            return String.format("%.2f", ((Number) value).doubleValue());
+        }
+        return String.valueOf(value);
+    }
+
+    private static String formatSeconds(long seconds) {
+        if (seconds < 0) {
+            return "unknown";
+        }
+        return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+
+    @Override
+    public void close() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.tradeshift.productengine.filepreparator;
+
+import com.tradeshift.productengine.filepreparator.translations.BatchingTranslator;
+import com.tradeshift.productengine.filepreparator.translations.Cache;
+import com.tradeshift.productengine.filepreparator.translations.CachingTranslator;
+import com.tradeshift.productengine.filepreparator.translations.DeduplicatingTranslator;
+import com.tradeshift.productengine.filepreparator.translations.MeteredTranslator;
+import com.tradeshift.productengine.filepreparator.translations.Pool;
+import com.tradeshift.productengine.filepreparator.translations.SeleniumTranslator;
+import com.tradeshift.productengine.filepreparator.translations.SeleniumWrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static com.tradeshift.productengine.filepreparator.SimpleExcelReaderExample.*;
+
+/**
+ * Translates all input spreadsheets of JobConfig in one JVM. Cache, browser pool and batching are opened once
+ * and stay warm between spreadsheets, every spreadsheet gets its own output, change journal and metrics summary.
+ * Cache and browser gauges in metrics are totals since the runner was opened.
+ */
+class JobRunner implements AutoCloseable {
+
+    private final JobConfig config;
+    private final int threadCount;
+    private final Cache cache;
+    private final Pool<SeleniumWrapper> seleniumWrapperPool;
+    private final SeleniumTranslator seleniumTranslator;
+    private final BatchingTranslator batchingTranslator;
+
+    JobRunner(JobConfig config) throws IOException {
+        this.config = config;
+        SimpleExcelReaderExample.setLanguages(config.getLanguages());
+        SimpleExcelReaderExample.setSourcePriority(config.getSourcePriority());
+        if (config.getChromedriver() != null) {
+            System.setProperty(SeleniumWrapper.CHROME_DRIVER_PROPERTY, config.getChromedriver());
+        }
+        int browserCount = config.getBrowserCount();
+        threadCount = config.getThreadCount(browserCount);
+        System.out.println("Languages: " + config.getLanguages() + ", browsers: " + browserCount
+                + ", threads: " + threadCount);
+
+        cache = new Cache(Sharding.shardPath(config.getCachePath(), config.getShard(), config.getShards()),
+                "translations", Cache.DEFAULT_MEMORY_CHARS, CACHE_FLUSH_SIZE, CACHE_FLUSH_MILLIS);
+        seleniumWrapperPool = new Pool<>(browserCount, SeleniumWrapper::new,
+                SeleniumWrapper::getLanguagePair, SeleniumWrapper::isAlive, BROWSER_MAX_AGE_MILLIS);
+        seleniumTranslator = new SeleniumTranslator(seleniumWrapperPool, RESULT_TIMEOUT_MILLIS,
+                SeleniumWrapper.ResultWait.OBSERVER, BROWSER_TAKE_TIMEOUT_MILLIS);
+        batchingTranslator = new BatchingTranslator(seleniumTranslator, BATCH_SIZE, BATCH_CHARS, BATCH_LINGER_MILLIS);
+    }
+
+    void runAll() throws IOException, InterruptedException {
+        List<File> inputs = config.getInputFiles();
+        for (int i = 0; i < inputs.size(); i++) {
+            System.out.println("Input " + (i + 1) + " of " + inputs.size() + ": " + inputs.get(i));
+            run(inputs.get(i));
+        }
+    }
+
+    void run(File input) throws IOException, InterruptedException {
+        String outputPath = config.getOutputPath(input);
+        if (config.isDirectoryInput()) {
+            new File(outputPath).getAbsoluteFile().getParentFile().mkdirs();
+        }
+        MeteredTranslator meteredTranslator = new MeteredTranslator(batchingTranslator);
+        DeduplicatingTranslator translator = new DeduplicatingTranslator(new CachingTranslator(cache, meteredTranslator));
+
+        try (ChangeJournal journal = config.isIncremental() ? new ChangeJournal(config.getJournalPath(input)) : null) {
+            JobMetrics metrics = new JobMetrics(meteredTranslator)
+                    .gauge("cacheHitRatio", cache::getHitRatio)
+                    .gauge("coalesced", translator::getCoalescedCount)
+                    .gauge("batches", batchingTranslator::getBatchCount)
+                    .gauge("pageLoads", seleniumTranslator::getPageLoads)
+                    .gauge("reloadsAvoided", seleniumTranslator::getReloadsAvoided)
+                    .gauge("poolWaitMillis", seleniumTranslator::getPoolWaitMillis)
+                    .gauge("waitingForBrowser", seleniumWrapperPool::getWaitingCount);
+            try {
+                Map<String, Long> resumeLengths = null;
+                if (journal != null) {
+                    if (outputPath.equals(journal.getPendingRun())) {
+                        resumeLengths = journal.getOutputLengths();
+                        System.out.println("Resuming " + outputPath + ", files: " + resumeLengths);
+                    }
+                    journal.startRun(outputPath);
+                }
+
+                if (config.isPipeline()) {
+                    metrics.startReporting(METRICS_PERIOD_MILLIS);
+                    try (FeedWriter feedWriter = newFeedWriter(outputPath, resumeLengths)) {
+                        new TranslationPipeline(cache, translator, threadCount, PIPELINE_CAPACITY, journal, metrics)
+                                .run(input, feedWriter);
+                    }
+                    if (journal != null) {
+                        journal.finishRun();
+                    }
+                    return;
+                }
+
+                List<RowBean> rowBeans = readBeans(input.getPath(), ReadMode.AUTO);
+                if (config.getShards() > 1) {
+                    Sharding.retainShard(rowBeans, config.getShard(), config.getShards());
+                }
+                Map<String, Long> hashes = null;
+                if (journal != null) {
+                    hashes = filterChanged(rowBeans, journal);
+                }
+                // chunks are planned one by one on export, whole catalog is only counted
+                TranslationPlan.Estimate estimate = TranslationPlan.estimate(rowBeans, cache);
+                long planned = estimate.getUncachedCallCount();
+                System.out.println("Planned " + estimate);
+                metrics.addPlanned(planned);
+                metrics.startReporting(METRICS_PERIOD_MILLIS);
+                if (planned > 0) {
+                    String[] warmUpPair = estimate.getMostFrequentPair();
+                    seleniumWrapperPool.warmUp(seleniumWrapper -> {
+                        if (warmUpPair != null) {
+                            seleniumWrapper.openTranslatePage(warmUpPair[0], warmUpPair[1]);
+                        }
+                    });
+                }
+
+                try (FeedWriter feedWriter = newFeedWriter(outputPath, resumeLengths)) {
+                    exportByChunks(translator, rowBeans, hashes, journal, feedWriter, threadCount);
+                    System.out.println("Feed rows written: " + feedWriter.getRowCount());
+                }
+                if (journal != null) {
+                    journal.finishRun();
+                }
+            } finally {
+                metrics.close();
+                System.out.println(metrics.getProgressLine());
+                // summary is secondary, its failure must not hide failure of the run
+                try {
+                    metrics.writeSummary(outputPath + ".metrics.json");
+                } catch (IOException | RuntimeException e) {
+                    System.out.println("Failed to write metrics summary: " + e);
+                }
+            }
+        }
+        System.out.println("Translations done, " + batchingTranslator
+                + ", coalesced: " + translator.getCoalescedCount() + ", " + seleniumTranslator.getStats());
+    }
+
+    private FeedWriter newFeedWriter(String outputPath, Map<String, Long> resumeLengths) throws IOException {
+        return new FeedWriter(outputPath, config.getSplit(), config.getMaxRows(), config.isGzip(), resumeLengths);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            seleniumWrapperPool.close();
+        } finally {
+            cache.close();
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.tradeshift.productengine.filepreparator;
+
+import lombok.Data;
+
+@Data
+class LanguagePart {
+    private String title, description;
+    private boolean origin;
+}
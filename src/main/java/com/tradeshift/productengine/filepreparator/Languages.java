@@ -0,0 +1,64 @@
+package com.tradeshift.productengine.filepreparator;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Small index of every language code, so RowBean keeps language parts in an array instead of a map.
+ * Configured languages get the first indices in their order, codes found in files are appended.
+ */
+class Languages {
+
+    private static final Map<String, Integer> indices = new ConcurrentHashMap<>();
+    private static final List<String> codes = new CopyOnWriteArrayList<>();
+
+    static {
+        for (String language : SimpleExcelReaderExample.languages) {
+            indexOf(language);
+        }
+    }
+
+    private Languages() {
+    }
+
+    static int indexOf(String language) {
+        Integer result = indices.get(language);
+        if (result != null) {
+            return result;
+        }
+        synchronized (codes) {
+            return indices.computeIfAbsent(language, code -> {
+                codes.add(code);
+                return codes.size() - 1;
+            });
+        }
+    }
+
+    /**
+     * @return index of known language, or -1
+     */
+    static int find(String language) {
+        Integer result = indices.get(language);
+        return result == null ? -1 : result;
+    }
+
+    static String code(int index) {
+        return codes.get(index);
+    }
+
+    /**
+     * Configured languages must have the first indices, as RowBean lists language parts in index order.
+     */
+    static void checkConfigured(List<String> languages) {
+        synchronized (codes) {
+            for (int i = 0; i < languages.size(); i++) {
+                if (i < codes.size() ? !codes.get(i).equals(languages.get(i)) : indexOf(languages.get(i)) != i) {
+                    throw new IllegalStateException("Languages " + languages + " are configured after rows with "
+                            + codes + " were read");
+                }
+            }
+        }
+    }
+}
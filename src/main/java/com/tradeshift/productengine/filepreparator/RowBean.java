@@ -0,0 +1,234 @@
+package com.tradeshift.productengine.filepreparator;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Kept compact, as every SKU of the file is in memory: language parts are in an array by Languages index,
+ * repetitive columns and image url prefixes are shared, and price is kept as unscaled long and scale when it fits
+ * them, as prices read from sheet like 12.50 do.
+ */
+@Data
+class RowBean {
+    /*
+    SKU*	Language	Name*	Price*	Currency	Category	Description	Image1	Image2	Image3	Image4	Image5	UOM
+     */
+    private static final int IMAGE_COUNT = 5;
+
+    private String identifier, currency, category, uom;
+
+    /**
+     * Scale marking that price is not kept as unscaled long.
+     */
+    private static final byte NO_SCALE = Byte.MIN_VALUE;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private long unscaledPrice;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private byte priceScale = NO_SCALE;
+
+    /**
+     * Price which does not fit unscaled long and scale, otherwise null.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private BigDecimal exactPrice;
+
+    /**
+     * Shared url prefix and file name of every image, created with the first image.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private String[] images;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private LanguagePart[] languageParts = new LanguagePart[SimpleExcelReaderExample.languages.size()];
+
+    LanguagePart getLanguagePart(String language) {
+        SimpleExcelReaderExample.notBlank(language);
+        int index = Languages.indexOf(language);
+        if (index >= languageParts.length) {
+            LanguagePart[] grown = new LanguagePart[index + 1];
+            System.arraycopy(languageParts, 0, grown, 0, languageParts.length);
+            languageParts = grown;
+        }
+        if (languageParts[index] == null) {
+            languageParts[index] = new LanguagePart();
+        }
+        return languageParts[index];
+    }
+
+    /**
+     * @return read only view of present language parts, in Languages order
+     */
+    Map<String, LanguagePart> getLanguageParts() {
+        return new LanguagePartsView();
+    }
+
+    void setCurrency(String currency) {
+        this.currency = SharedStrings.share(currency);
+    }
+
+    void setCategory(String category) {
+        this.category = SharedStrings.share(category);
+    }
+
+    void setUom(String uom) {
+        this.uom = SharedStrings.share(uom);
+    }
+
+    BigDecimal getPrice() {
+        if (priceScale != NO_SCALE) {
+            return BigDecimal.valueOf(unscaledPrice, priceScale);
+        }
+        return exactPrice;
+    }
+
+    void setPrice(BigDecimal price) {
+        if (price != null && price.scale() > NO_SCALE && price.scale() <= Byte.MAX_VALUE
+                && price.unscaledValue().bitLength() < Long.SIZE) {
+            unscaledPrice = price.unscaledValue().longValue();
+            priceScale = (byte) price.scale();
+            exactPrice = null;
+        } else {
+            unscaledPrice = 0;
+            priceScale = NO_SCALE;
+            exactPrice = price;
+        }
+    }
+
+    String getImage1() {
+        return getImage(0);
+    }
+
+    void setImage1(String image) {
+        setImage(0, image);
+    }
+
+    String getImage2() {
+        return getImage(1);
+    }
+
+    void setImage2(String image) {
+        setImage(1, image);
+    }
+
+    String getImage3() {
+        return getImage(2);
+    }
+
+    void setImage3(String image) {
+        setImage(2, image);
+    }
+
+    String getImage4() {
+        return getImage(3);
+    }
+
+    void setImage4(String image) {
+        setImage(3, image);
+    }
+
+    String getImage5() {
+        return getImage(4);
+    }
+
+    void setImage5(String image) {
+        setImage(4, image);
+    }
+
+    private String getImage(int index) {
+        if (images == null) {
+            return null;
+        }
+        String prefix = images[2 * index];
+        String name = images[2 * index + 1];
+        return prefix == null ? name : prefix + name;
+    }
+
+    private void setImage(int index, String image) {
+        if (images == null) {
+            if (image == null) {
+                return;
+            }
+            images = new String[2 * IMAGE_COUNT];
+        }
+        int slash = image == null ? -1 : image.lastIndexOf('/');
+        images[2 * index] = slash < 0 ? null : SharedStrings.share(image.substring(0, slash + 1));
+        images[2 * index + 1] = slash < 0 ? image : image.substring(slash + 1);
+    }
+
+    private class LanguagePartsView extends AbstractMap<String, LanguagePart> {
+
+        @Override
+        public LanguagePart get(Object language) {
+            int index = language instanceof String ? Languages.find((String) language) : -1;
+            return index >= 0 && index < languageParts.length ? languageParts[index] : null;
+        }
+
+        @Override
+        public boolean containsKey(Object language) {
+            return get(language) != null;
+        }
+
+        @Override
+        public Set<Entry<String, LanguagePart>> entrySet() {
+            return new AbstractSet<Entry<String, LanguagePart>>() {
+                @Override
+                public Iterator<Entry<String, LanguagePart>> iterator() {
+                    return new Iterator<Entry<String, LanguagePart>>() {
+                        private int next = advance(0);
+
+                        private int advance(int from) {
+                            while (from < languageParts.length && languageParts[from] == null) {
+                                from++;
+                            }
+                            return from;
+                        }
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < languageParts.length;
+                        }
+
+                        @Override
+                        public Entry<String, LanguagePart> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            Entry<String, LanguagePart> result =
+                                    new SimpleImmutableEntry<>(Languages.code(next), languageParts[next]);
+                            next = advance(next + 1);
+                            return result;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    int result = 0;
+                    for (LanguagePart languagePart : languageParts) {
+                        if (languagePart != null) {
+                            result++;
+                        }
+                    }
+                    return result;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.tradeshift.productengine.filepreparator;
+
+import au.com.bytecode.opencsv.CSVReader;
+import au.com.bytecode.opencsv.CSVWriter;
+import com.tradeshift.productengine.filepreparator.translations.CacheCompaction;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Splits SKUs by hash into shards, so every shard can be translated by its own process, possibly on another
+ * machine, with its own browsers, cache and journal files. Files of shard i get "-i" suffix, e.g. feed-0.csv and
+ * translations-0.db. Shard cache may be started as a copy of the common translations.db.
+ *
+ * Shard of SKU depends only on SKU and shard count, so shard outputs never overlap. merge combines shard CSVs
+ * into one file in SKU order, and shard caches into the common cache, in shard order.
+ */
+class Sharding {
+
+    private static final int SKU_COLUMN = 0;
+
+    static int shardOf(String identifier, int shardCount) {
+        return Math.floorMod(identifier.hashCode(), shardCount);
+    }
+
+    /**
+     * @return path with "-shard" before extension, or path itself if there is only one shard
+     */
+    static String shardPath(String path, int shard, int shardCount) {
+        if (shardCount <= 1) {
+            return path;
+        }
+        int dot = path.lastIndexOf('.');
+        if (dot <= path.lastIndexOf(File.separatorChar)) {
+            return path + "-" + shard;
+        }
+        return path.substring(0, dot) + "-" + shard + path.substring(dot);
+    }
+
+    /**
+     * Removes SKUs of other shards.
+     */
+    static void retainShard(List<RowBean> rowBeans, int shard, int shardCount) {
+        int total = rowBeans.size();
+        rowBeans.removeIf(rowBean -> shardOf(rowBean.getIdentifier(), shardCount) != shard);
+        System.out.println("SKUs of shard " + shard + " of " + shardCount + ": " + rowBeans.size() + " of " + total);
+    }
+
+    /**
+     * Merges outputs and caches of all shards.
+     */
+    static void merge(String outputPath, String cachePath, String cacheInnerName, int shardCount) throws IOException {
+        List<File> shardOutputs = new ArrayList<>();
+        List<String> shardCaches = new ArrayList<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            shardOutputs.add(new File(shardPath(outputPath, shard, shardCount)));
+            String shardCache = shardPath(cachePath, shard, shardCount);
+            if (new File(shardCache).exists()) {
+                shardCaches.add(shardCache);
+            }
+        }
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputPath), StandardCharsets.UTF_8));
+             CSVWriter csvWriter = new CSVWriter(writer)
+        ) {
+            long rows = mergeCsv(shardOutputs, csvWriter);
+            System.out.println("Shard outputs merged, rows: " + rows);
+        }
+        CacheCompaction.merge(shardCaches, cachePath, cacheInnerName);
+    }
+
+    /**
+     * K-way merge of CSV files sorted by SKU, header is taken from the first file. Rows of one SKU stay together,
+     * as every SKU is in one shard only.
+     *
+     * @return count of written rows without header
+     */
+    static long mergeCsv(List<File> inputs, CSVWriter csvWriter) throws IOException {
+        List<Cursor> cursors = new ArrayList<>();
+        PriorityQueue<Cursor> queue = new PriorityQueue<>((a, b) -> {
+            int result = a.row[SKU_COLUMN].compareTo(b.row[SKU_COLUMN]);
+            return result != 0 ? result : Integer.compare(a.index, b.index);
+        });
+        long count = 0;
+        try {
+            for (File input : inputs) {
+                if (!input.exists()) {
+                    throw new IllegalStateException("No shard output: " + input);
+                }
+                Cursor cursor = new Cursor(input, cursors.size());
+                cursors.add(cursor);
+                String[] header = cursor.reader.readNext();
+                if (cursors.size() == 1 && header != null) {
+                    csvWriter.writeNext(header);
+                }
+                if (cursor.next()) {
+                    queue.add(cursor);
+                }
+            }
+
+            while (!queue.isEmpty()) {
+                Cursor cursor = queue.poll();
+                csvWriter.writeNext(cursor.row);
+                count++;
+                if (cursor.next()) {
+                    queue.add(cursor);
+                }
+            }
+        } finally {
+            for (Cursor cursor : cursors) {
+                cursor.reader.close();
+            }
+        }
+        return count;
+    }
+
+    private static class Cursor {
+        private final File file;
+        private final int index;
+        private final CSVReader reader;
+        private String[] row;
+
+        Cursor(File file, int index) throws IOException {
+            this.file = file;
+            this.index = index;
+            // CSVWriter escapes quotes by doubling them only, so backslashes must not be read as escapes
+            this.reader = new CSVReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8),
+                    CSVWriter.DEFAULT_SEPARATOR, CSVWriter.DEFAULT_QUOTE_CHARACTER, '\0');
+        }
+
+        /**
+         * Reads next row and checks that SKUs are sorted, as merge depends on it.
+         */
+        boolean next() throws IOException {
+            String previous = row == null ? null : row[SKU_COLUMN];
+            row = reader.readNext();
+            if (row == null) {
+                return false;
+            }
+            if (previous != null && previous.compareTo(row[SKU_COLUMN]) > 0) {
+                throw new IllegalStateException("Shard output is not sorted by SKU: " + file + ", "
+                        + previous + " before " + row[SKU_COLUMN]);
+            }
+            return true;
+        }
+    }
+}
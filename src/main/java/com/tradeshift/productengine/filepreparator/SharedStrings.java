@@ -0,0 +1,33 @@
+package com.tradeshift.productengine.filepreparator;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Deduplicates values of repetitive columns, e.g. currency, category, UOM and image url prefixes, so every
+ * distinct value is kept in memory once. Pool is bounded, values above the limit are kept as they are.
+ */
+class SharedStrings {
+
+    private static final int MAX_SIZE = 100000;
+
+    private static final ConcurrentMap<String, String> pool = new ConcurrentHashMap<>();
+
+    private SharedStrings() {
+    }
+
+    static String share(String value) {
+        if (value == null) {
+            return null;
+        }
+        String result = pool.get(value);
+        if (result != null) {
+            return result;
+        }
+        if (pool.size() >= MAX_SIZE) {
+            return value;
+        }
+        result = pool.putIfAbsent(value, value);
+        return result == null ? value : result;
+    }
+}
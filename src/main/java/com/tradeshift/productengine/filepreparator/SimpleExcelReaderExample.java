@@ -1,182 +1,216 @@
 package com.tradeshift.productengine.filepreparator;
 
 
-import au.com.bytecode.opencsv.CSVWriter;
-import com.tradeshift.productengine.filepreparator.translations.Cache;
-import com.tradeshift.productengine.filepreparator.translations.Pool;
-import com.tradeshift.productengine.filepreparator.translations.SeleniumWrapper;
-import lombok.Data;
+import com.tradeshift.productengine.filepreparator.translations.TranslationSkippedException;
+import com.tradeshift.productengine.filepreparator.translations.Translator;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-import org.jsoup.Jsoup;
 
 import java.io.*;
 import java.math.BigDecimal;
-import java.text.DecimalFormat;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicLong;
 
 public class SimpleExcelReaderExample {
 
-    static final int THREAD_COUNT = 10;
+    static final int THREAD_COUNT = 40;
     static final int SELENIUM_COUNT = 4;
-
-    private static final List<String> languages = Arrays.asList("en", "sv", "de", /*"ru",*/ "fr");
-
-    private final static BlockingQueue blockingQueue = new LinkedBlockingQueue(THREAD_COUNT + 5);
-    private final static ThreadPoolExecutor executor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT,
-            60, TimeUnit.SECONDS, blockingQueue);
-    private final static LinkedBlockingQueue<Future<?>> futureQueue = new LinkedBlockingQueue<>();
-
-    private final static DecimalFormat moneyFormat = new DecimalFormat("#0.00");
-    private final static DecimalFormat intFormat = new DecimalFormat("#0");
+    static final long RESULT_TIMEOUT_MILLIS = 10 * 1000;
+    static final long BROWSER_TAKE_TIMEOUT_MILLIS = 5 * 60 * 1000;
+    static final long BROWSER_MAX_AGE_MILLIS = 60 * 60 * 1000;
+    static final int BATCH_SIZE = 20;
+    static final int BATCH_CHARS = 4500;
+    static final long BATCH_LINGER_MILLIS = 200;
+    static final int CACHE_FLUSH_SIZE = 500;
+    static final long CACHE_FLUSH_MILLIS = 5 * 1000;
+    static final int PIPELINE_CAPACITY = 1000;
+    static final int EXPORT_CHUNK_SIZE = 5000;
+    static final long METRICS_PERIOD_MILLIS = 30 * 1000;
+
+    static final List<String> DEFAULT_LANGUAGES = Arrays.asList("en", "sv", "de", /*"ru",*/ "fr");
+
+    /**
+     * Set once by setLanguages, before any RowBean is created.
+     */
+    static volatile List<String> languages = DEFAULT_LANGUAGES;
+
+    /**
+     * Origin languages to take translation source from, in order of preference. Languages not listed follow in
+     * languages order.
+     */
+    static volatile List<String> sourcePriority = Collections.emptyList();
 
 
     public static void main(String[] args) throws IOException, InterruptedException {
-        TreeMap<String, RowBean> rowBeans = readBeans("/home/pkonstantinov/Documents/United product list.xlsx");
+        JobConfig config = JobConfig.load(args);
 
-        try (Cache cache = new Cache("/home/pkonstantinov/tradeshift/my-forked/importpreparator/db/translations.db","translations");
-             Pool<SeleniumWrapper> seleniumWrapperPool = new Pool<>(SELENIUM_COUNT, SeleniumWrapper::new);
-        ) {
-            fillTranslations(cache, seleniumWrapperPool, rowBeans);
+        if (config.isMerge()) {
+            Sharding.merge(config.getOutput(), config.getCachePath(), "translations", config.getShards());
+            return;
         }
-        try (Writer writer = new FileWriter("/home/pkonstantinov/Documents/feed.csv");
-                CSVWriter csvWriter = new CSVWriter(writer)
-        ) {
-            exportToCsv(rowBeans, csvWriter);
+
+        try (JobRunner runner = new JobRunner(config)) {
+            runner.runAll();
         }
     }
 
-    private static void exportToCsv(TreeMap<String, RowBean> rowBeans, CSVWriter csvWriter) throws IOException {
-        csvWriter.writeNext(new String[] {"SKU*", "Language", "Name*", "Price*", "Currency", "Category", "Description", "Image1",
-                "Image2", "Image3", "Image4", "Image5", "UOM"});
-
-        for (RowBean rowBean : rowBeans.values()) {
-            for (Map.Entry<String, LanguagePart> languageEntry : rowBean.getLanguageParts().entrySet()) {
-                csvWriter.writeNext(new String[] {
-                        getEmptyNull(rowBean.getIdentifier()),
-                        getEmptyNull(languageEntry.getKey()),
-                        getEmptyNull(languageEntry.getValue().getTitle()),
-                        getEmptyNull(moneyFormat.format(rowBean.getPrice())),
-                        getEmptyNull(rowBean.getCurrency()),
-                        getEmptyNull(rowBean.getCategory()),
-                        getEmptyNull(languageEntry.getValue().getDescription()),
-                        getEmptyNull(rowBean.getImage1()),
-                        getEmptyNull(rowBean.getImage2()),
-                        getEmptyNull(rowBean.getImage3()),
-                        getEmptyNull(rowBean.getImage4()),
-                        getEmptyNull(rowBean.getImage5()),
-                        getEmptyNull(rowBean.getUom())
-                });
-            }
-        }
+    /**
+     * @throws IllegalStateException if RowBeans were already created with other languages
+     */
+    static void setLanguages(List<String> configured) {
+        languages = Collections.unmodifiableList(new ArrayList<>(configured));
+        Languages.checkConfigured(languages);
     }
 
-    private static String getEmptyNull(String source) {
-        return source == null ? "" : source;
+    static void setSourcePriority(List<String> configured) {
+        sourcePriority = Collections.unmodifiableList(new ArrayList<>(configured));
     }
 
-    private static void fillTranslations(Cache cache, Pool<SeleniumWrapper> seleniumWrapperPool, TreeMap<String, RowBean> rowBeans) {
-        long totalCapacity = calcTotalCapacity(rowBeans);
-        final AtomicLong counter = new AtomicLong();
-        System.out.println("Number of needed translations: " + totalCapacity);
-
-        for (String fromLanguage : languages) {
-            for (String toLanguage : languages) {
-
-                for (RowBean rowBean : rowBeans.values()) {
-                    final LanguagePart from = rowBean.getLanguagePart(fromLanguage);
-                    final LanguagePart to = rowBean.getLanguagePart(toLanguage);
-                    if (isNotBlank(from.getTitle()) && isBlank(to.getTitle()) && from.isOrigin()) {
-                        futureQueue.add(executor.submit(new Runnable() {
-                            @Override
-                            public void run() {
-                                synchronized (to) {
-                                    to.setTitle(translate(cache, seleniumWrapperPool, fromLanguage, toLanguage, from.getTitle()));
-                                    if (counter.incrementAndGet() % (totalCapacity / 100) == 0) {
-                                        System.out.print(".");
-                                    }
-                                }
-                            }
-                        }));
-                    }
-                    if (isNotBlank(from.getDescription()) && isBlank(to.getDescription()) && from.isOrigin()) {
-                        futureQueue.add(executor.submit(new Runnable() {
-                            @Override
-                            public void run() {
-                                to.setDescription(translate(cache, seleniumWrapperPool, fromLanguage, toLanguage, from.getDescription()));
-                                if (counter.incrementAndGet() % (totalCapacity / 100) == 0) {
-                                    System.out.print(".");
-                                }
-                            }
-                        }));
-                    }
-                    while (futureQueue.size() >= THREAD_COUNT) {
-                        Future future = futureQueue.poll();
-                        if (future != null) {
-                            try {
-                                future.get();
-                            } catch (InterruptedException | ExecutionException e) {
-                                throw new IllegalStateException(e);
-                            }
-                        }
-                    }
-                }
+    static List<String> getSourcePriority() {
+        List<String> result = new ArrayList<>(sourcePriority);
+        for (String language : languages) {
+            if (!result.contains(language)) {
+                result.add(language);
             }
         }
+        return result;
+    }
 
-        for (Future<?> future : futureQueue) {
-            try {
-                future.get();
-            } catch (InterruptedException | ExecutionException e) {
-                throw new IllegalStateException(e);
+    /**
+     * Removes SKUs exported before with the same content, and SKUs already written by resumed run.
+     *
+     * @return hashes of remaining SKUs
+     */
+    static Map<String, Long> filterChanged(List<RowBean> rowBeans, ChangeJournal journal) {
+        int total = rowBeans.size();
+        Map<String, Long> hashes = new HashMap<>();
+        rowBeans.removeIf(rowBean -> {
+            long hash = ChangeJournal.hash(rowBean);
+            if (journal.needsExport(rowBean.getIdentifier(), hash)) {
+                hashes.put(rowBean.getIdentifier(), hash);
+                return false;
             }
-        }
+            return true;
+        });
+        System.out.println("Changed or new SKUs: " + rowBeans.size() + " of " + total);
+        return hashes;
     }
 
-    private static long calcTotalCapacity(TreeMap<String, RowBean> rowBeans) {
-        long result = 0;
-        for (String toLanguage : languages) {
-            for (RowBean rowBean : rowBeans.values()) {
-                if (isBlank(rowBean.getLanguagePart(toLanguage).getTitle())) {
-                    result++;
-                }
-                if (isBlank(rowBean.getLanguagePart(toLanguage).getDescription())) {
-                    result++;
-                }
+    /**
+     * Translates and exports SKUs by chunks. Chunk is written on exporter thread while the next one is translated,
+     * and with journal it is marked once it is written and flushed.
+     *
+     * @param journal where to mark written SKUs and exported ones with their hashes, or null
+     */
+    static void exportByChunks(Translator translator, List<RowBean> rowBeans,
+                               Map<String, Long> hashes, ChangeJournal journal, FeedWriter feedWriter,
+                               int threadCount)
+            throws IOException, InterruptedException {
+        ExecutorService exporter = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> exported = null;
+            List<RowBean> exportedChunk = Collections.emptyList();
+            for (int start = 0; start < rowBeans.size(); start += EXPORT_CHUNK_SIZE) {
+                List<RowBean> chunk = rowBeans.subList(start, Math.min(start + EXPORT_CHUNK_SIZE, rowBeans.size()));
+
+                fillTranslations(translator, chunk, threadCount);
+                awaitExport(exported, exportedChunk, hashes, journal, feedWriter);
+
+                exportedChunk = chunk;
+                exported = exporter.submit(() -> {
+                    feedWriter.writeAll(chunk);
+                    feedWriter.flush();
+                    return null;
+                });
             }
+            awaitExport(exported, exportedChunk, hashes, journal, feedWriter);
+        } finally {
+            exporter.shutdownNow();
         }
-        return result;
     }
 
-    private static String translate(Cache cache, Pool<SeleniumWrapper> seleniumWrapperPool, String fromLanguage, String toLanguage, String source) {
-
-        if (cache.containsKey(fromLanguage, toLanguage, source)) {
-            String res = cache.get(fromLanguage, toLanguage, source);
-            if (isNotBlank(res)) {
-                return res;
+    private static void awaitExport(Future<?> exported, List<RowBean> chunk, Map<String, Long> hashes,
+                                    ChangeJournal journal, FeedWriter feedWriter)
+            throws IOException, InterruptedException {
+        if (exported == null) {
+            return;
+        }
+        try {
+            exported.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        if (journal != null) {
+            for (RowBean rowBean : chunk) {
+                journal.markWritten(rowBean.getIdentifier());
+                // SKU with skipped translations stays changed, so the next run translates it again
+                if (!TranslationPlan.hasBlankFields(rowBean)) {
+                    journal.markExported(rowBean.getIdentifier(), hashes.get(rowBean.getIdentifier()));
+                }
             }
+            journal.commit(feedWriter.getFileLengths());
         }
+    }
+
+    /**
+     * Plans translations of blank fields, one source per field and one call per distinct string, and executes them.
+     */
+    static void fillTranslations(Translator translator, Collection<RowBean> rowBeans, int threadCount)
+            throws InterruptedException {
+        TranslationPlan plan = TranslationPlan.create(rowBeans);
+        System.out.println("Planned " + plan);
+        plan.execute(translator, threadCount);
+    }
 
-        SeleniumWrapper seleniumWrapper = seleniumWrapperPool.take();
+    /**
+     * @return translation or null if it timed out, so the field stays blank and is retried on the next run
+     */
+    static String translateOrSkip(Translator translator, String fromLanguage, String toLanguage, String source) {
         try {
-            seleniumWrapper.openTranslatePage(fromLanguage, toLanguage);
-            seleniumWrapper.setSource(source);
-            String result = seleniumWrapper.waitForResultChanged(2 * 1000);
-            cache.put(fromLanguage, toLanguage, source, result);
-            return result;
-        } finally {
-            seleniumWrapperPool.setFree(seleniumWrapper);
+            return translator.translate(fromLanguage, toLanguage, source);
+        } catch (TranslationSkippedException e) {
+            System.out.println("Skipped " + fromLanguage + "->" + toLanguage + ": " + e.getMessage());
+            return null;
         }
     }
 
-    private static TreeMap<String, RowBean> readBeans(String excelFilePath) throws IOException {
+    enum ReadMode {
+        /**
+         * Whole workbook is loaded with XSSFWorkbook, fine for small files.
+         */
+        DOM,
+        /**
+         * Rows are read one by one with SAX, memory does not depend on file size.
+         */
+        STREAMING,
+        /**
+         * STREAMING for files bigger than STREAMING_THRESHOLD_BYTES, DOM otherwise.
+         */
+        AUTO
+    }
+
+    static final long STREAMING_THRESHOLD_BYTES = 10 * 1024 * 1024;
+
+    /**
+     * @return RowBeans sorted by SKU
+     */
+    static List<RowBean> readBeans(String excelFilePath, ReadMode readMode) throws IOException {
+        File file = new File(excelFilePath);
+        Map<String, RowBean> rowBeans = new HashMap<>();
+
+        if (readMode == ReadMode.STREAMING || readMode == ReadMode.AUTO && file.length() > STREAMING_THRESHOLD_BYTES) {
+            StreamingSheetReader.readRows(file, 1, cells -> mergeRow(rowBeans, cells));
+            return sortBySku(rowBeans);
+        }
+
         try (
-            FileInputStream inputStream = new FileInputStream(new File(excelFilePath));
+            FileInputStream inputStream = new FileInputStream(file);
             Workbook workbook = new XSSFWorkbook(inputStream)
         ) {
             Sheet firstSheet = workbook.getSheetAt(0);
@@ -186,95 +220,52 @@ public class SimpleExcelReaderExample {
                 iterator.next();
             }
 
-            TreeMap<String, RowBean> rowBeans = new TreeMap<>(Comparator.comparing(String::toString));
-
             while (iterator.hasNext()) {
-                Row nextRow = iterator.next();
-                RowBean rowBean = new RowBean();
-                readRowBean(nextRow, rowBean);
-
-                if (rowBeans.containsKey(rowBean.getIdentifier())) {
-                    rowBean = rowBeans.get(rowBean.getIdentifier());
-                    readRowBean(nextRow, rowBean);
-                } else {
-                    rowBeans.put(rowBean.getIdentifier(), rowBean);
-                }
+                mergeRow(rowBeans, readCells(iterator.next()));
             }
 
-            return rowBeans;
+            return sortBySku(rowBeans);
         }
     }
 
-    private static RowBean readRowBean(Row nextRow, RowBean rowBean) {
-        Iterator<Cell> cellIterator = nextRow.cellIterator();
+    /**
+     * Sorts RowBeans and cleans their descriptions in parallel, as that is the most CPU intensive part of reading.
+     */
+    private static List<RowBean> sortBySku(Map<String, RowBean> rowBeans) {
+        List<RowBean> result = new ArrayList<>(rowBeans.values());
+        result.sort(Comparator.comparing(RowBean::getIdentifier));
+        DescriptionCleaner.cleanAll(result);
+        return result;
+    }
+
+    private static void mergeRow(Map<String, RowBean> rowBeans, Object[] cells) {
+        RowBean rowBean = new RowBean();
+        readRowBean(cells, rowBean);
 
-        String language = null;
+        if (rowBeans.containsKey(rowBean.getIdentifier())) {
+            rowBean = rowBeans.get(rowBean.getIdentifier());
+            readRowBean(cells, rowBean);
+        } else {
+            rowBeans.put(rowBean.getIdentifier(), rowBean);
+        }
+    }
+
+    /**
+     * Converts DOM row to the same cells array StreamingSheetReader produces.
+     */
+    private static Object[] readCells(Row row) {
+        Object[] cells = new Object[Math.max(row.getLastCellNum(), 0)];
+        Iterator<Cell> cellIterator = row.cellIterator();
 
         while (cellIterator.hasNext()) {
             Cell cell = cellIterator.next();
 
             switch (cell.getCellType()) {
                 case Cell.CELL_TYPE_STRING:
-                    switch (cell.getColumnIndex()) {
-                        case 0:
-                            rowBean.setIdentifier(cell.getStringCellValue());
-                            break;
-                        case 1:
-                            language = cell.getStringCellValue();
-                            break;
-                        case 2:
-                            LanguagePart languagePart = rowBean.getLanguagePart(language);
-                            languagePart.setTitle(cell.getStringCellValue());
-                            languagePart.setOrigin(true);
-                            break;
-                        case 3:
-                            rowBean.setPrice(new BigDecimal(cell.getStringCellValue()));
-                            break;
-                        case 4:
-                            rowBean.setCurrency(cell.getStringCellValue());
-                            break;
-                        case 5:
-                            rowBean.setCategory(cell.getStringCellValue());
-                            break;
-                        case 6:
-                            rowBean.getLanguagePart(language).setDescription(Jsoup.parse(cell.getStringCellValue()).text());
-                            break;
-                        case 7:
-                            rowBean.setImage1(cell.getStringCellValue());
-                            break;
-                        case 8:
-                            rowBean.setImage2(cell.getStringCellValue());
-                            break;
-                        case 9:
-                            rowBean.setImage3(cell.getStringCellValue());
-                            break;
-                        case 10:
-                            rowBean.setImage4(cell.getStringCellValue());
-                            break;
-                        case 11:
-                            rowBean.setImage5(cell.getStringCellValue());
-                            break;
-                        case 12:
-                            rowBean.setUom(cell.getStringCellValue());
-                            break;
-                        default:
-                            throw new IllegalStateException("Unknown columnNumber: " + cell.getColumnIndex());
-                    }
+                    cells[cell.getColumnIndex()] = cell.getStringCellValue();
                     break;
                 case Cell.CELL_TYPE_NUMERIC:
-                    switch (cell.getColumnIndex()) {
-                        case 0:
-                            rowBean.setIdentifier(intFormat.format(cell.getNumericCellValue()));
-                            break;
-                        case 3:
-                            rowBean.setPrice(new BigDecimal(cell.getNumericCellValue()));
-                            break;
-                        case 5:
-                            rowBean.setCategory(intFormat.format(cell.getNumericCellValue()));
-                            break;
-                        default:
-                            throw new IllegalStateException("Unexpected numeric value in columnNumber: " + cell.getColumnIndex());
-                    }
+                    cells[cell.getColumnIndex()] = cell.getNumericCellValue();
                     break;
                 case Cell.CELL_TYPE_BLANK:
                     break;
@@ -282,47 +273,96 @@ public class SimpleExcelReaderExample {
                         ", type: " + cell.getCellType());
             }
         }
-        return rowBean;
+        return cells;
     }
 
-    @Data
-    private static class RowBean {
-        /*
-        SKU*	Language	Name*	Price*	Currency	Category	Description	Image1	Image2	Image3	Image4	Image5	UOM
-         */
-        private String identifier, currency, category, image1, image2, image3, image4, image5, uom;
-        private BigDecimal price;
-        private final Map<String, LanguagePart> languageParts = new HashMap<>();
-
-        LanguagePart getLanguagePart(String language) {
-            notBlank(language);
-            if (languageParts.containsKey(language)) {
-                return languageParts.get(language);
-            } else {
-                LanguagePart languagePart = new LanguagePart();
-                languageParts.put(language, languagePart);
-                return languagePart;
+    /**
+     * Description is kept as read, DescriptionCleaner converts it to text.
+     */
+    static RowBean readRowBean(Object[] cells, RowBean rowBean) {
+        String language = null;
+
+        for (int columnIndex = 0; columnIndex < cells.length; columnIndex++) {
+            Object value = cells[columnIndex];
+
+            if (value instanceof String) {
+                String stringValue = (String) value;
+                switch (columnIndex) {
+                    case 0:
+                        rowBean.setIdentifier(stringValue);
+                        break;
+                    case 1:
+                        language = stringValue;
+                        break;
+                    case 2:
+                        LanguagePart languagePart = rowBean.getLanguagePart(language);
+                        languagePart.setTitle(stringValue);
+                        languagePart.setOrigin(true);
+                        break;
+                    case 3:
+                        rowBean.setPrice(new BigDecimal(stringValue));
+                        break;
+                    case 4:
+                        rowBean.setCurrency(stringValue);
+                        break;
+                    case 5:
+                        rowBean.setCategory(stringValue);
+                        break;
+                    case 6:
+                        rowBean.getLanguagePart(language).setDescription(stringValue);
+                        break;
+                    case 7:
+                        rowBean.setImage1(stringValue);
+                        break;
+                    case 8:
+                        rowBean.setImage2(stringValue);
+                        break;
+                    case 9:
+                        rowBean.setImage3(stringValue);
+                        break;
+                    case 10:
+                        rowBean.setImage4(stringValue);
+                        break;
+                    case 11:
+                        rowBean.setImage5(stringValue);
+                        break;
+                    case 12:
+                        rowBean.setUom(stringValue);
+                        break;
+                    default:
+                        throw new IllegalStateException("Unknown columnNumber: " + columnIndex);
+                }
+            } else if (value instanceof Double) {
+                double numericValue = (Double) value;
+                switch (columnIndex) {
+                    case 0:
+                        rowBean.setIdentifier(FeedWriter.formatInteger(numericValue));
+                        break;
+                    case 3:
+                        rowBean.setPrice(new BigDecimal(numericValue));
+                        break;
+                    case 5:
+                        rowBean.setCategory(FeedWriter.formatInteger(numericValue));
+                        break;
+                    default:
+                        throw new IllegalStateException("Unexpected numeric value in columnNumber: " + columnIndex);
+                }
             }
         }
+        return rowBean;
     }
 
-    @Data
-    private static class LanguagePart {
-        private String title, description;
-        private boolean origin;
-    }
-
-    private static void notBlank(String source) {
+    static void notBlank(String source) {
         if (isBlank(source)) {
             throw new IllegalArgumentException();
         }
     }
 
-    private static boolean isNotBlank(String source) {
+    static boolean isNotBlank(String source) {
         return !isBlank(source);
     }
 
-    private static boolean isBlank(String source) {
+    static boolean isBlank(String source) {
         return source == null || source.trim().length() == 0;
     }
 }
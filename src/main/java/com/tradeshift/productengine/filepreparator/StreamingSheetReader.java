@@ -0,0 +1,168 @@
+package com.tradeshift.productengine.filepreparator;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads the first sheet of xlsx file with SAX, without building the POI DOM.
+ * Only the current row and the shared strings table are kept in memory, so heap usage does not depend on rows count.
+ *
+ * Every row is passed to consumer as array indexed by column number, where value is String for text cells,
+ * Double for numeric cells and null for blank or missing cells.
+ */
+class StreamingSheetReader {
+
+    private StreamingSheetReader() {
+    }
+
+    static void readRows(File file, int skipRows, Consumer<Object[]> rowConsumer) throws IOException {
+        OPCPackage pkg = null;
+        try {
+            pkg = OPCPackage.open(file, PackageAccess.READ);
+            ReadOnlySharedStringsTable sharedStrings = new ReadOnlySharedStringsTable(pkg);
+            XSSFReader xssfReader = new XSSFReader(pkg);
+
+            Iterator<InputStream> sheets = xssfReader.getSheetsData();
+            if (!sheets.hasNext()) {
+                throw new IllegalStateException("No sheets in file: " + file);
+            }
+
+            SAXParserFactory saxFactory = SAXParserFactory.newInstance();
+            saxFactory.setNamespaceAware(true);
+            XMLReader xmlReader = saxFactory.newSAXParser().getXMLReader();
+            xmlReader.setContentHandler(new SheetHandler(sharedStrings, skipRows, rowConsumer));
+
+            try (InputStream sheet = sheets.next()) {
+                xmlReader.parse(new InputSource(sheet));
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("Can not read file: " + file, e);
+        } finally {
+            if (pkg != null) {
+                pkg.revert();
+            }
+        }
+    }
+
+    private static class SheetHandler extends DefaultHandler {
+
+        private final ReadOnlySharedStringsTable sharedStrings;
+        private final Consumer<Object[]> rowConsumer;
+        private int rowsToSkip;
+
+        private final List<Object> cells = new ArrayList<>();
+        private final StringBuilder value = new StringBuilder();
+        private int column;
+        private String type;
+        private boolean collecting;
+
+        SheetHandler(ReadOnlySharedStringsTable sharedStrings, int skipRows, Consumer<Object[]> rowConsumer) {
+            this.sharedStrings = sharedStrings;
+            this.rowsToSkip = skipRows;
+            this.rowConsumer = rowConsumer;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "row":
+                    cells.clear();
+                    break;
+                case "c":
+                    String reference = attributes.getValue("r");
+                    column = reference == null ? cells.size() : columnIndex(reference);
+                    type = attributes.getValue("t");
+                    value.setLength(0);
+                    break;
+                case "v":
+                case "t":
+                    collecting = true;
+                    break;
+                default:
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (collecting) {
+                value.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName) {
+                case "v":
+                case "t":
+                    collecting = false;
+                    break;
+                case "c":
+                    setCell(column, cellValue());
+                    break;
+                case "row":
+                    if (rowsToSkip > 0) {
+                        rowsToSkip--;
+                    } else {
+                        rowConsumer.accept(cells.toArray());
+                    }
+                    break;
+                default:
+            }
+        }
+
+        private Object cellValue() {
+            if (value.length() == 0) {
+                return null;
+            }
+            if (type == null || "n".equals(type)) {
+                return Double.parseDouble(value.toString());
+            }
+            switch (type) {
+                case "s":
+                    return sharedStrings.getEntryAt(Integer.parseInt(value.toString()));
+                case "inlineStr":
+                case "str":
+                    return value.toString();
+                default:
+                    throw new IllegalStateException("Unexpected value type in columnNumber: " + column + ", type: " + type);
+            }
+        }
+
+        private void setCell(int index, Object cellValue) {
+            while (cells.size() <= index) {
+                cells.add(null);
+            }
+            cells.set(index, cellValue);
+        }
+
+        private static int columnIndex(String reference) {
+            int result = 0;
+            for (int i = 0; i < reference.length(); i++) {
+                char ch = reference.charAt(i);
+                if (ch < 'A' || ch > 'Z') {
+                    break;
+                }
+                result = result * 26 + (ch - 'A' + 1);
+            }
+            return result - 1;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.tradeshift.productengine.filepreparator;
+
+import com.tradeshift.productengine.filepreparator.translations.Cache;
+import com.tradeshift.productengine.filepreparator.translations.Translator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.tradeshift.productengine.filepreparator.SimpleExcelReaderExample.isNotBlank;
+
+/**
+ * Read -> translate -> write pipeline. Stages are connected with bounded queues:
+ * <ul>
+ *     <li>reader streams the sheet and emits RowBean as soon as all rows of SKU are read</li>
+ *     <li>descriptions of emitted RowBeans are cleaned in parallel, keeping reader order</li>
+ *     <li>dispatcher fills translations found in cache in place and sends the rest to translation workers</li>
+ *     <li>translator is expected to put its results to the same cache</li>
+ *     <li>writer (caller thread) writes RowBean to FeedWriter as soon as all its translations are done</li>
+ * </ul>
+ * At most capacity RowBeans are in flight, written RowBeans are not referenced anymore.
+ * Rows of one SKU must be contiguous in the sheet, and SKUs are written in completion order, not sorted.
+ * With ChangeJournal unchanged SKUs and SKUs written by resumed run are skipped, and written SKUs are marked
+ * every JOURNAL_COMMIT_SIZE SKUs.
+ */
+class TranslationPipeline {
+
+    private static final RowBean END = new RowBean();
+    private static final int JOURNAL_COMMIT_SIZE = 1000;
+
+    private final Cache cache;
+    private final Translator translator;
+    private final int threadCount;
+    private final int capacity;
+    private final ChangeJournal journal;
+    private final JobMetrics metrics;
+    private final Map<String, Long> hashes = new ConcurrentHashMap<>();
+    /**
+     * Uncached translations sent to workers and not done yet, so strings repeated across SKUs in flight
+     * are planned once.
+     */
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    private final BlockingQueue<CompletableFuture<RowBean>> readQueue;
+    private final BlockingQueue<RowBean> writeQueue;
+    private final Semaphore inFlight;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * @param journal to skip unchanged SKUs and remember written ones, or null to process all SKUs
+     * @param metrics to add translations not found in cache to planned count as SKUs are dispatched, or null
+     */
+    TranslationPipeline(Cache cache, Translator translator, int threadCount, int capacity, ChangeJournal journal,
+                        JobMetrics metrics) {
+        this.cache = cache;
+        this.journal = journal;
+        this.metrics = metrics;
+        this.translator = translator;
+        this.threadCount = threadCount;
+        this.capacity = capacity;
+        this.readQueue = new ArrayBlockingQueue<>(capacity);
+        this.writeQueue = new ArrayBlockingQueue<>(capacity);
+        this.inFlight = new Semaphore(capacity);
+    }
+
+    void run(File excelFile, FeedWriter feedWriter) throws IOException, InterruptedException {
+        ExecutorService stages = Executors.newFixedThreadPool(2);
+        ExecutorService cleaners = DescriptionCleaner.newExecutor();
+        ExecutorService workers = Executors.newFixedThreadPool(threadCount);
+        try {
+            Future<?> reader = stages.submit(() -> {
+                read(excelFile, cleaners);
+                return null;
+            });
+            Future<?> dispatcher = stages.submit(() -> {
+                dispatch(workers);
+                return null;
+            });
+
+            long written = write(feedWriter);
+
+            getStage(reader);
+            getStage(dispatcher);
+            System.out.println("Pipeline finished, SKUs written: " + written + ", descriptions "
+                    + DescriptionCleaner.getStats());
+        } finally {
+            stages.shutdownNow();
+            cleaners.shutdownNow();
+            workers.shutdownNow();
+        }
+    }
+
+    private void read(File excelFile, ExecutorService cleaners) throws IOException, InterruptedException {
+        Set<String> emitted = new HashSet<>();
+        RowBean[] current = new RowBean[1];
+        try {
+            StreamingSheetReader.readRows(excelFile, 1, cells -> {
+                RowBean rowBean = SimpleExcelReaderExample.readRowBean(cells, new RowBean());
+                if (current[0] != null && Objects.equals(current[0].getIdentifier(), rowBean.getIdentifier())) {
+                    SimpleExcelReaderExample.readRowBean(cells, current[0]);
+                    return;
+                }
+                if (!emitted.add(rowBean.getIdentifier())) {
+                    throw new IllegalStateException("Rows of SKU are not contiguous: " + rowBean.getIdentifier());
+                }
+                if (current[0] != null) {
+                    emit(current[0], cleaners);
+                }
+                current[0] = rowBean;
+            });
+            if (current[0] != null) {
+                emit(current[0], cleaners);
+            }
+        } catch (RuntimeException | IOException e) {
+            failure.compareAndSet(null, e);
+            throw e;
+        } finally {
+            readQueue.put(CompletableFuture.completedFuture(END));
+        }
+    }
+
+    private void emit(RowBean rowBean, ExecutorService cleaners) {
+        put(readQueue, CompletableFuture.supplyAsync(() -> {
+            DescriptionCleaner.clean(rowBean);
+            return rowBean;
+        }, cleaners));
+    }
+
+    /**
+     * END is always queued, so writer stops, and failure is reported to it before END.
+     */
+    private void dispatch(ExecutorService workers) throws InterruptedException {
+        try {
+            while (true) {
+                RowBean rowBean = take(readQueue);
+                if (rowBean == END) {
+                    break;
+                }
+                if (journal != null) {
+                    long hash = ChangeJournal.hash(rowBean);
+                    if (!journal.needsExport(rowBean.getIdentifier(), hash)) {
+                        continue;
+                    }
+                    hashes.put(rowBean.getIdentifier(), hash);
+                }
+                inFlight.acquire();
+
+                CompletableFuture.allOf(translateAll(rowBean, workers)).whenComplete((ignore, e) -> {
+                    if (e != null) {
+                        failure.compareAndSet(null, e);
+                    }
+                    put(writeQueue, rowBean);
+                });
+            }
+            inFlight.acquire(capacity);
+        } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+            throw e;
+        } finally {
+            writeQueue.put(END);
+        }
+    }
+
+    /**
+     * Fills fields found in cache and sends the rest to workers. One call per distinct string of the SKU,
+     * strings repeated across SKUs are coalesced by translator and cache.
+     */
+    private CompletableFuture<?>[] translateAll(RowBean rowBean, ExecutorService workers) {
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (TranslationPlan.Call call : TranslationPlan.create(Collections.singletonList(rowBean)).getCalls()) {
+            String cached = cache.get(call.getFromLanguage(), call.getToLanguage(), call.getSource());
+            if (isNotBlank(cached)) {
+                call.complete(cached);
+            } else {
+                String key = call.getFromLanguage() + "/" + call.getToLanguage() + "/" + call.getSource();
+                if (metrics != null && pending.add(key)) {
+                    metrics.addPlanned(1);
+                }
+                futures.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        call.complete(SimpleExcelReaderExample.translateOrSkip(
+                                translator, call.getFromLanguage(), call.getToLanguage(), call.getSource()));
+                    } finally {
+                        pending.remove(key);
+                    }
+                }, workers));
+            }
+        }
+        return futures.toArray(new CompletableFuture<?>[futures.size()]);
+    }
+
+    private long write(FeedWriter feedWriter) throws IOException, InterruptedException {
+        long written = 0;
+        List<String> unmarked = new ArrayList<>();
+
+        while (true) {
+            RowBean rowBean = writeQueue.poll(1, TimeUnit.SECONDS);
+            Throwable e = failure.get();
+            if (e != null) {
+                throw new IllegalStateException("Pipeline failed", e);
+            }
+            if (rowBean == END) {
+                feedWriter.flush();
+                markExported(unmarked, feedWriter);
+                return written;
+            }
+            if (rowBean != null) {
+                feedWriter.write(rowBean);
+                written++;
+                inFlight.release();
+                if (journal != null) {
+                    // SKU with skipped translations stays changed, so the next run translates it again
+                    if (TranslationPlan.hasBlankFields(rowBean)) {
+                        hashes.remove(rowBean.getIdentifier());
+                    }
+                    unmarked.add(rowBean.getIdentifier());
+                    if (unmarked.size() >= JOURNAL_COMMIT_SIZE) {
+                        feedWriter.flush();
+                        markExported(unmarked, feedWriter);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks written SKUs, and exported ones which have hash left, and commits them with flushed output lengths.
+     */
+    private void markExported(List<String> identifiers, FeedWriter feedWriter) {
+        if (journal == null) {
+            return;
+        }
+        for (String identifier : identifiers) {
+            journal.markWritten(identifier);
+            Long hash = hashes.remove(identifier);
+            if (hash != null) {
+                journal.markExported(identifier, hash);
+            }
+        }
+        journal.commit(feedWriter.getFileLengths());
+        identifiers.clear();
+    }
+
+    private static RowBean take(BlockingQueue<CompletableFuture<RowBean>> queue) throws InterruptedException {
+        try {
+            return queue.take().get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to clean descriptions", e.getCause());
+        }
+    }
+
+    private static <T> void put(BlockingQueue<T> queue, T rowBean) {
+        try {
+            queue.put(rowBean);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void getStage(Future<?> stage) throws IOException, InterruptedException {
+        try {
+            stage.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
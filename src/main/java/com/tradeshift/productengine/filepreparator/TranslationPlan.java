@@ -0,0 +1,253 @@
+package com.tradeshift.productengine.filepreparator;
+
+import com.tradeshift.productengine.filepreparator.translations.Cache;
+import com.tradeshift.productengine.filepreparator.translations.Translator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static com.tradeshift.productengine.filepreparator.SimpleExcelReaderExample.isBlank;
+import static com.tradeshift.productengine.filepreparator.SimpleExcelReaderExample.isNotBlank;
+import static com.tradeshift.productengine.filepreparator.SimpleExcelReaderExample.languages;
+
+/**
+ * Translations needed to fill blank titles and descriptions of RowBeans. Every blank field gets exactly one source:
+ * the same field of the first origin language in source priority which has it. Fields which need the same source
+ * in the same languages pair share one Call, across all RowBeans of the plan, so every distinct string is
+ * translated once. Calls are grouped by languages pair, to reuse opened translate pages.
+ */
+class TranslationPlan {
+
+    private final Map<String, Map<String, Call>> callsByPair = new LinkedHashMap<>();
+    private long fieldCount;
+
+    /**
+     * One translation and the fields its result goes to.
+     */
+    static class Call {
+        private final String fromLanguage;
+        private final String toLanguage;
+        private final String source;
+        private final List<Consumer<String>> targets = new ArrayList<>(1);
+
+        Call(String fromLanguage, String toLanguage, String source) {
+            this.fromLanguage = fromLanguage;
+            this.toLanguage = toLanguage;
+            this.source = source;
+        }
+
+        String getFromLanguage() {
+            return fromLanguage;
+        }
+
+        String getToLanguage() {
+            return toLanguage;
+        }
+
+        String getSource() {
+            return source;
+        }
+
+        /**
+         * Sets translation, or null if it was skipped, to all fields of the call.
+         */
+        void complete(String translation) {
+            for (Consumer<String> target : targets) {
+                target.accept(translation);
+            }
+        }
+    }
+
+    static TranslationPlan create(Collection<RowBean> rowBeans) {
+        return create(rowBeans, SimpleExcelReaderExample.getSourcePriority());
+    }
+
+    static TranslationPlan create(Collection<RowBean> rowBeans, List<String> sourcePriority) {
+        TranslationPlan plan = new TranslationPlan();
+        for (RowBean rowBean : rowBeans) {
+            forEachBlankField(rowBean, sourcePriority, plan::add);
+        }
+        return plan;
+    }
+
+    /**
+     * Counts calls of the plan of rowBeans without building it, as the plan keeps a target for every field.
+     */
+    static Estimate estimate(Collection<RowBean> rowBeans, Cache cache) {
+        Estimate estimate = new Estimate(cache);
+        for (RowBean rowBean : rowBeans) {
+            forEachBlankField(rowBean, SimpleExcelReaderExample.getSourcePriority(), estimate::add);
+        }
+        return estimate;
+    }
+
+    /**
+     * @return true if some field the plan would fill is blank, e.g. because its translation was skipped
+     */
+    static boolean hasBlankFields(RowBean rowBean) {
+        boolean[] result = new boolean[1];
+        forEachBlankField(rowBean, SimpleExcelReaderExample.getSourcePriority(),
+                (fromLanguage, toLanguage, source, to, title) -> result[0] = true);
+        return result[0];
+    }
+
+    /**
+     * Blank title or description of language part, with the source it gets translation from.
+     */
+    private interface FieldVisitor {
+        void visit(String fromLanguage, String toLanguage, String source, LanguagePart to, boolean title);
+    }
+
+    private static void forEachBlankField(RowBean rowBean, List<String> sourcePriority, FieldVisitor visitor) {
+        // every configured language gets its feed row, even if there is nothing to translate into it
+        for (String language : languages) {
+            rowBean.getLanguagePart(language);
+        }
+        Map<String, LanguagePart> languageParts = rowBean.getLanguageParts();
+        LanguagePart titleSource = null;
+        LanguagePart descriptionSource = null;
+        String titleLanguage = null;
+        String descriptionLanguage = null;
+        for (String language : sourcePriority) {
+            LanguagePart languagePart = languageParts.get(language);
+            if (languagePart == null || !languagePart.isOrigin()) {
+                continue;
+            }
+            if (titleSource == null && isNotBlank(languagePart.getTitle())) {
+                titleSource = languagePart;
+                titleLanguage = language;
+            }
+            if (descriptionSource == null && isNotBlank(languagePart.getDescription())) {
+                descriptionSource = languagePart;
+                descriptionLanguage = language;
+            }
+        }
+        if (titleSource == null && descriptionSource == null) {
+            return;
+        }
+
+        for (String toLanguage : languages) {
+            LanguagePart to = languageParts.get(toLanguage);
+            if (titleSource != null && isBlank(to.getTitle())) {
+                visitor.visit(titleLanguage, toLanguage, titleSource.getTitle(), to, true);
+            }
+            if (descriptionSource != null && isBlank(to.getDescription())) {
+                visitor.visit(descriptionLanguage, toLanguage, descriptionSource.getDescription(), to, false);
+            }
+        }
+    }
+
+    private void add(String fromLanguage, String toLanguage, String source, LanguagePart to, boolean title) {
+        callsByPair.computeIfAbsent(fromLanguage + "/" + toLanguage, pair -> new LinkedHashMap<>())
+                .computeIfAbsent(source, ignore -> new Call(fromLanguage, toLanguage, source))
+                .targets.add(title ? to::setTitle : to::setDescription);
+        fieldCount++;
+    }
+
+    /**
+     * @return calls grouped by languages pair
+     */
+    List<Call> getCalls() {
+        List<Call> result = new ArrayList<>();
+        for (Map<String, Call> calls : callsByPair.values()) {
+            result.addAll(calls.values());
+        }
+        return result;
+    }
+
+    long getCallCount() {
+        long result = 0;
+        for (Map<String, Call> calls : callsByPair.values()) {
+            result += calls.size();
+        }
+        return result;
+    }
+
+    /**
+     * @return count of blank fields the plan fills
+     */
+    long getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Translates every call once on threadCount threads and fills its fields.
+     */
+    void execute(Translator translator, int threadCount) throws InterruptedException {
+        try (TranslationScheduler scheduler = new TranslationScheduler(threadCount, 2 * threadCount)) {
+            for (Call call : getCalls()) {
+                scheduler.submit(() -> call.complete(SimpleExcelReaderExample.translateOrSkip(
+                        translator, call.fromLanguage, call.toLanguage, call.source)));
+            }
+            scheduler.awaitAll();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "translations: " + getCallCount() + " for " + fieldCount + " fields";
+    }
+
+    /**
+     * Distinct calls of plan, and those of them which are not in cache, so they go to browsers.
+     * Keeps only sources already referenced by RowBeans.
+     */
+    static class Estimate {
+        private final Cache cache;
+        private final Map<String, Set<String>> sourcesByPair = new LinkedHashMap<>();
+        private final Map<String, Long> uncachedByPair = new LinkedHashMap<>();
+        private long callCount;
+        private long fieldCount;
+
+        private Estimate(Cache cache) {
+            this.cache = cache;
+        }
+
+        private void add(String fromLanguage, String toLanguage, String source, LanguagePart to, boolean title) {
+            fieldCount++;
+            String pair = fromLanguage + "/" + toLanguage;
+            if (!sourcesByPair.computeIfAbsent(pair, ignore -> new HashSet<>()).add(source)) {
+                return;
+            }
+            callCount++;
+            if (!cache.containsKey(fromLanguage, toLanguage, source)) {
+                uncachedByPair.merge(pair, 1L, Long::sum);
+            }
+        }
+
+        long getUncachedCallCount() {
+            long result = 0;
+            for (long count : uncachedByPair.values()) {
+                result += count;
+            }
+            return result;
+        }
+
+        /**
+         * @return {fromLanguage, toLanguage} with the most calls not in cache, or null if nothing goes to browsers
+         */
+        String[] getMostFrequentPair() {
+            String result = null;
+            long max = 0;
+            for (Map.Entry<String, Long> entry : uncachedByPair.entrySet()) {
+                if (entry.getValue() > max) {
+                    result = entry.getKey();
+                    max = entry.getValue();
+                }
+            }
+            return result == null ? null : result.split("/");
+        }
+
+        @Override
+        public String toString() {
+            return "translations: " + callCount + " for " + fieldCount + " fields, not cached: "
+                    + getUncachedCallCount();
+        }
+    }
+}
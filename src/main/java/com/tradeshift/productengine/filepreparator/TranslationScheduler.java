@@ -0,0 +1,76 @@
+package com.tradeshift.productengine.filepreparator;
+
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs translation tasks on threadCount threads with backpressure: submit blocks while maxInFlight tasks are
+ * submitted and not finished, instead of rejecting. Finished tasks are collected in completion order,
+ * so one slow translation does not stop submitting, and the first failure is rethrown to the submitting thread.
+ */
+class TranslationScheduler implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private final CompletionService<Void> completionService;
+    private final Semaphore permits;
+    private long submitted;
+    private long completed;
+
+    TranslationScheduler(int threadCount, int maxInFlight) {
+        this.executor = new ThreadPoolExecutor(threadCount, threadCount, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>());
+        this.completionService = new ExecutorCompletionService<>(executor);
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    void submit(Runnable task) throws InterruptedException {
+        permits.acquire();
+        try {
+            completionService.submit(() -> {
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            }, null);
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        submitted++;
+        collect(completionService.poll());
+    }
+
+    /**
+     * Waits for all submitted tasks.
+     */
+    void awaitAll() throws InterruptedException {
+        while (completed < submitted) {
+            collect(completionService.take());
+        }
+    }
+
+    private void collect(Future<Void> future) throws InterruptedException {
+        while (future != null) {
+            completed++;
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+            future = completionService.poll();
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,224 @@
+package com.tradeshift.productengine.filepreparator.translations;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent translations of the same languages pair into one round trip to delegate.
+ *
+ * Sources are joined with new line, translated at once and split back. Batch is sent by the caller thread which
+ * filled it up (by count or chars), or which waited lingerMillis for it. If translated batch can not be split
+ * into the same number of lines, or batch fails, every caller falls back to single string translation.
+ * Sources containing new lines are always translated one by one.
+ */
+public class BatchingTranslator implements Translator {
+
+    static final String DELIMITER = "\n";
+
+    private final Translator delegate;
+    private final int maxBatchSize;
+    private final int maxBatchChars;
+    private final long lingerMillis;
+
+    private final Map<String, Batch> pending = new HashMap<>();
+
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong batchedCount = new AtomicLong();
+    private final AtomicLong singleCount = new AtomicLong();
+    private final AtomicLong fallbackCount = new AtomicLong();
+
+    public BatchingTranslator(Translator delegate, int maxBatchSize, int maxBatchChars, long lingerMillis) {
+        this.delegate = delegate;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchChars = maxBatchChars;
+        this.lingerMillis = lingerMillis;
+    }
+
+    @Override
+    public String translate(String fromLanguage, String toLanguage, String source) {
+        if (maxBatchSize <= 1 || source.contains(DELIMITER) || source.length() >= maxBatchChars) {
+            return translateSingle(fromLanguage, toLanguage, source);
+        }
+
+        String key = fromLanguage + DELIMITER + toLanguage;
+        Request request = new Request(source);
+        List<Batch> toSend = new ArrayList<>(2);
+
+        synchronized (pending) {
+            Batch batch = pending.get(key);
+            if (batch != null && !batch.fits(source)) {
+                pending.remove(key);
+                toSend.add(batch);
+                batch = null;
+            }
+            if (batch == null) {
+                batch = new Batch(fromLanguage, toLanguage);
+                pending.put(key, batch);
+            }
+            batch.add(request);
+            request.batch = batch;
+            if (batch.requests.size() >= maxBatchSize) {
+                pending.remove(key);
+                toSend.add(batch);
+            }
+        }
+
+        for (Batch batch : toSend) {
+            send(batch);
+        }
+
+        String result;
+        try {
+            result = request.result.get(lingerMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Batch expired = null;
+            synchronized (pending) {
+                if (pending.get(key) == request.batch) {
+                    pending.remove(key);
+                    expired = request.batch;
+                }
+            }
+            if (expired != null) {
+                send(expired);
+            }
+            result = await(request);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+
+        if (result == null) {
+            fallbackCount.incrementAndGet();
+            return translateSingle(fromLanguage, toLanguage, source);
+        }
+        return result;
+    }
+
+    private String translateSingle(String fromLanguage, String toLanguage, String source) {
+        singleCount.incrementAndGet();
+        return delegate.translate(fromLanguage, toLanguage, source);
+    }
+
+    /**
+     * Completes every request of batch, with null if batch failed or its result can not be split.
+     * Failures of single string translation are passed to the waiting caller.
+     */
+    private void send(Batch batch) {
+        List<Request> requests = batch.requests;
+        try {
+            if (requests.size() == 1) {
+                requests.get(0).result.complete(translateSingle(batch.fromLanguage, batch.toLanguage, requests.get(0).source));
+                return;
+            }
+
+            List<String> sources = new ArrayList<>(requests.size());
+            for (Request request : requests) {
+                sources.add(request.source);
+            }
+            String[] lines;
+            try {
+                lines = delegate.translate(batch.fromLanguage, batch.toLanguage, String.join(DELIMITER, sources))
+                        .split(DELIMITER);
+            } catch (RuntimeException e) {
+                // failed batch, e.g. timed out, must not skip all its strings, every one gets its own chance
+                System.out.println("Batch of " + requests.size() + " failed, translating one by one: " + e);
+                lines = null;
+            }
+
+            batchCount.incrementAndGet();
+            if (lines == null || lines.length != requests.size()) {
+                for (Request request : requests) {
+                    request.result.complete(null);
+                }
+                return;
+            }
+            batchedCount.addAndGet(requests.size());
+            for (int i = 0; i < lines.length; i++) {
+                requests.get(i).result.complete(lines[i].trim());
+            }
+        } catch (RuntimeException e) {
+            for (Request request : requests) {
+                request.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static String await(Request request) {
+        try {
+            return request.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private static RuntimeException unwrap(ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+            return (RuntimeException) e.getCause();
+        }
+        return new IllegalStateException(e.getCause());
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public long getBatchedCount() {
+        return batchedCount.get();
+    }
+
+    public long getSingleCount() {
+        return singleCount.get();
+    }
+
+    public long getFallbackCount() {
+        return fallbackCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "batches: " + getBatchCount() + ", translated in batches: " + getBatchedCount()
+                + ", single translations: " + getSingleCount() + ", fallbacks: " + getFallbackCount();
+    }
+
+    private class Batch {
+        private final String fromLanguage, toLanguage;
+        private final List<Request> requests = new ArrayList<>();
+        private int chars;
+
+        Batch(String fromLanguage, String toLanguage) {
+            this.fromLanguage = fromLanguage;
+            this.toLanguage = toLanguage;
+        }
+
+        boolean fits(String source) {
+            return chars + DELIMITER.length() + source.length() <= maxBatchChars;
+        }
+
+        void add(Request request) {
+            requests.add(request);
+            chars += request.source.length() + DELIMITER.length();
+        }
+    }
+
+    private static class Request {
+        private final String source;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private Batch batch;
+
+        Request(String source) {
+            this.source = source;
+        }
+    }
+}
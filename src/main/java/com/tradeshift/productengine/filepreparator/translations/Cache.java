@@ -10,67 +10,228 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 /**
  * HTreeMap (HashMap) can be used as cache, where items are removed after timeout or when maximal size is reached.
+ *
+ * Lookups go to in-heap LRU tier first, bounded by chars of cached sources and translations,
+ * and then to the file tier. File tier hits are promoted to the memory tier.
+ *
+ * With flushSize 1 every put is committed to file at once. With bigger flushSize puts are buffered (write-behind)
+ * and committed in groups, when flushSize puts are buffered or flushMillis passed. Buffered puts are visible to
+ * get and are always flushed by close.
  */
 public class Cache implements Closeable {
 
+    public static final long DEFAULT_MEMORY_CHARS = 16 * 1024 * 1024;
+    public static final int COMMIT_EACH_PUT = 1;
+
     private final Map<CacheKey, String> instance;
     private final DB db;
+    private final LruCache<CacheKey, String> memory;
+
+    private final int flushSize;
+    private final Map<CacheKey, String> buffer = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ScheduledExecutorService flusher;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong fileHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
 
     public Cache(String filePath, String cacheInnerName) throws IOException {
+        this(filePath, cacheInnerName, DEFAULT_MEMORY_CHARS, COMMIT_EACH_PUT, 0);
+    }
+
+    public Cache(String filePath, String cacheInnerName, long memoryChars, int flushSize, long flushMillis)
+            throws IOException {
+        memory = new LruCache<>(memoryChars, (key, value) -> key.getSource().length() + value.length());
+        this.flushSize = flushSize;
+
+        db = openDb(filePath);
+
+        if (db.exists(cacheInnerName)) {
+            instance =  db
+                    .getHashMap(cacheInnerName);
+            if (isLegacy(db, cacheInnerName)) {
+                System.out.println("Cache uses java serialization for keys, run CacheCompaction to make it smaller");
+            }
+        } else {
+            instance = createMap(db, cacheInnerName);
+        }
+
+        if (flushSize > COMMIT_EACH_PUT && flushMillis > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "cache-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+
+        System.out.println("Cache loadad, items count: " + instance.size());
+    }
+
+    static DB openDb(String filePath) throws IOException {
         File dbFile = new File(filePath);
         if (!dbFile.exists()) {
             dbFile.createNewFile();
         }
 
-        db = DBMaker.newFileDB(dbFile)
+        return DBMaker.newFileDB(dbFile)
                 .sizeLimit(2)
                 .transactionDisable()
                 .make();
+    }
 
-        if (db.exists(cacheInnerName)) {
-            instance =  db
-                    .getHashMap(cacheInnerName);
-        } else {
-            instance = db
-                    .createHashMap(cacheInnerName)
-                    .make();
-        }
+    /**
+     * Creates map with compact keys and values. Maps created before keep java serialization and are still readable.
+     */
+    static <K, V> Map<K, V> createMap(DB db, String name) {
+        return db
+                .createHashMap(name)
+                .keySerializer(new CacheKeySerializer(TextSerializer.DEFAULT_COMPRESS_ABOVE_BYTES))
+                .valueSerializer(new TextSerializer(TextSerializer.DEFAULT_COMPRESS_ABOVE_BYTES))
+                .make();
+    }
 
-        System.out.println("Cache loadad, items count: " + instance.size());
+    static boolean isLegacy(DB db, String name) {
+        return !(db.getCatalog().get(name + ".keySerializer") instanceof CacheKeySerializer);
     }
 
     @Override
     public void close() {
-        System.out.println("Cache closed, items count: " + instance.size());
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        flush();
+        System.out.println("Cache closed, items count: " + instance.size() + ", " + getStats());
         if (db != null) {
             db.commit();
             db.close();
         }
     }
 
+    /**
+     * Writes buffered puts to file and commits.
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            writeBuffer();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void writeBuffer() {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        Map<CacheKey, String> batch = new HashMap<>(buffer);
+        instance.putAll(batch);
+        db.commit();
+        commits.incrementAndGet();
+        for (Map.Entry<CacheKey, String> entry : batch.entrySet()) {
+            buffer.remove(entry.getKey(), entry.getValue());
+        }
+    }
+
 
+    /**
+     * Stored by CacheKeySerializer. Legacy dbs store it with java serialization, so the class is kept as is.
+     */
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
-    private static class CacheKey implements Serializable {
+    static class CacheKey implements Serializable {
         private String fromLanguage, toLanguage, source;
     }
 
     public void put(String fromLanguage, String toLanguage, String source, String translation) {
-        instance.put(new CacheKey(fromLanguage, toLanguage, source), translation);
-        db.commit();
+        CacheKey key = new CacheKey(fromLanguage, toLanguage, source);
+        memory.put(key, translation);
+
+        if (flushSize <= COMMIT_EACH_PUT) {
+            instance.put(key, translation);
+            db.commit();
+            commits.incrementAndGet();
+            return;
+        }
+
+        buffer.put(key, translation);
+        if (buffer.size() >= flushSize && flushLock.tryLock()) {
+            try {
+                writeBuffer();
+            } finally {
+                flushLock.unlock();
+            }
+        }
     }
 
+    /**
+     * @return cached translation or null
+     */
     public String get(String fromLanguage, String toLanguage, String source) {
-        return instance.get(new CacheKey(fromLanguage, toLanguage, source));
+        CacheKey key = new CacheKey(fromLanguage, toLanguage, source);
+        String result = memory.get(key);
+        if (result != null) {
+            memoryHits.incrementAndGet();
+            return result;
+        }
+
+        result = buffer.get(key);
+        if (result == null) {
+            result = instance.get(key);
+        }
+        if (result != null) {
+            fileHits.incrementAndGet();
+            memory.put(key, result);
+        } else {
+            misses.incrementAndGet();
+        }
+        return result;
     }
 
     public boolean containsKey(String fromLanguage, String toLanguage, String source) {
         return instance.containsKey(new CacheKey(fromLanguage, toLanguage, source));
     }
+
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    public long getFileHits() {
+        return fileHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return share of gets served by memory or file tier, 0 if there were no gets
+     */
+    public double getHitRatio() {
+        long hits = getMemoryHits() + getFileHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public String getStats() {
+        return "memory hits: " + getMemoryHits() + ", file hits: " + getFileHits() + ", misses: " + getMisses()
+                + ", memory items: " + memory.size() + ", commits: " + commits.get();
+    }
 }
\ No newline at end of file
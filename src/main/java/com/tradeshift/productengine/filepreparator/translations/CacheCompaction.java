@@ -0,0 +1,113 @@
+package com.tradeshift.productengine.filepreparator.translations;
+
+import org.mapdb.DB;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrites cache db into a new file with compact keys and values, dropping free space of the old file.
+ * Works for legacy dbs with java serialized keys too. Source is not changed, replace it with target when done.
+ * merge adds items of other cache dbs, e.g. of shards, to a db.
+ *
+ * Usage: CacheCompaction sourcePath targetPath [cacheInnerName]
+ */
+public class CacheCompaction {
+
+    private static final int COMMIT_SIZE = 10000;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: CacheCompaction sourcePath targetPath [cacheInnerName]");
+            return;
+        }
+        String name = args.length > 2 ? args[2] : "translations";
+        compact(args[0], args[1], name);
+    }
+
+    public static long compact(String sourcePath, String targetPath, String cacheInnerName) throws IOException {
+        if (!new File(sourcePath).exists()) {
+            throw new IllegalStateException("No cache db: " + sourcePath);
+        }
+        if (new File(targetPath).exists()) {
+            throw new IllegalStateException("Target already exists: " + targetPath);
+        }
+
+        long start = System.currentTimeMillis();
+        long count;
+        DB source = Cache.openDb(sourcePath);
+        DB target = Cache.openDb(targetPath);
+        try {
+            System.out.println("Compacting cache, legacy format: " + Cache.isLegacy(source, cacheInnerName));
+            count = copy(source, sourcePath, Cache.createMap(target, cacheInnerName), target, cacheInnerName);
+        } finally {
+            source.close();
+            target.close();
+        }
+
+        System.out.println("Cache compacted, items: " + count + ", bytes: " + dbSize(sourcePath) + " -> "
+                + dbSize(targetPath) + ", took ms: " + (System.currentTimeMillis() - start));
+        return count;
+    }
+
+    /**
+     * Adds items of source dbs missing in target db, target is created if needed. Sources are merged in the
+     * given order and the first translation of a key wins, so the result does not depend on timing.
+     *
+     * @return count of added items
+     */
+    public static long merge(List<String> sourcePaths, String targetPath, String cacheInnerName) throws IOException {
+        long count = 0;
+        DB target = Cache.openDb(targetPath);
+        try {
+            Map<Cache.CacheKey, String> to = target.exists(cacheInnerName)
+                    ? target.getHashMap(cacheInnerName)
+                    : Cache.createMap(target, cacheInnerName);
+            for (String sourcePath : sourcePaths) {
+                if (!new File(sourcePath).exists()) {
+                    throw new IllegalStateException("No cache db: " + sourcePath);
+                }
+                DB source = Cache.openDb(sourcePath);
+                try {
+                    long added = copy(source, sourcePath, to, target, cacheInnerName);
+                    System.out.println("Cache merged from " + sourcePath + ", items added: " + added);
+                    count += added;
+                } finally {
+                    source.close();
+                }
+            }
+        } finally {
+            target.close();
+        }
+        return count;
+    }
+
+    /**
+     * Puts items of source missing in target, committing every COMMIT_SIZE items.
+     */
+    private static long copy(DB source, String sourcePath, Map<Cache.CacheKey, String> to, DB target,
+                             String cacheInnerName) {
+        if (!source.exists(cacheInnerName)) {
+            throw new IllegalStateException("No cache " + cacheInnerName + " in " + sourcePath);
+        }
+        long count = 0;
+        Map<Cache.CacheKey, String> from = source.getHashMap(cacheInnerName);
+        for (Map.Entry<Cache.CacheKey, String> entry : from.entrySet()) {
+            if (to.putIfAbsent(entry.getKey(), entry.getValue()) == null && ++count % COMMIT_SIZE == 0) {
+                target.commit();
+                System.out.println("Items copied: " + count);
+            }
+        }
+        target.commit();
+        return count;
+    }
+
+    /**
+     * Size of db file with its index file.
+     */
+    private static long dbSize(String filePath) {
+        return new File(filePath).length() + new File(filePath + ".p").length();
+    }
+}
@@ -0,0 +1,78 @@
+package com.tradeshift.productengine.filepreparator.translations;
+
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+import org.mapdb.Serializer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stores cache key without java serialization overhead: known language codes as one byte index,
+ * other codes as UTF-8 string, and source as text of TextSerializer.
+ * Language codes are interned on read, so keys in memory share the same strings.
+ */
+class CacheKeySerializer implements Serializer<Cache.CacheKey>, Serializable {
+
+    /**
+     * Index + 1 is stored in file, so codes may only be appended.
+     */
+    private static final String[] LANGUAGES = {
+            "en", "sv", "de", "fr", "da", "no", "nb", "fi", "es", "it", "nl", "pl", "pt", "ru", "ja", "zh", "ko"
+    };
+
+    private static final int OTHER_LANGUAGE = 0;
+
+    private static final long serialVersionUID = 1L;
+
+    private final int compressAboveBytes;
+
+    CacheKeySerializer(int compressAboveBytes) {
+        this.compressAboveBytes = compressAboveBytes;
+    }
+
+    @Override
+    public void serialize(DataOutput out, Cache.CacheKey value) throws IOException {
+        writeLanguage(out, value.getFromLanguage());
+        writeLanguage(out, value.getToLanguage());
+        TextSerializer.writeText(out, value.getSource(), compressAboveBytes);
+    }
+
+    @Override
+    public Cache.CacheKey deserialize(DataInput in, int available) throws IOException {
+        String fromLanguage = readLanguage(in);
+        String toLanguage = readLanguage(in);
+        return new Cache.CacheKey(fromLanguage, toLanguage, TextSerializer.readText(in));
+    }
+
+    @Override
+    public int fixedSize() {
+        return -1;
+    }
+
+    private static void writeLanguage(DataOutput out, String language) throws IOException {
+        for (int i = 0; i < LANGUAGES.length; i++) {
+            if (LANGUAGES[i].equals(language)) {
+                out.writeByte(i + 1);
+                return;
+            }
+        }
+        byte[] bytes = language.getBytes(StandardCharsets.UTF_8);
+        out.writeByte(OTHER_LANGUAGE);
+        DataOutput2.packInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readLanguage(DataInput in) throws IOException {
+        int index = in.readUnsignedByte();
+        if (index != OTHER_LANGUAGE) {
+            return LANGUAGES[index - 1];
+        }
+        byte[] bytes = new byte[DataInput2.unpackInt(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8).intern();
+    }
+}
@@ -0,0 +1,27 @@
+package com.tradeshift.productengine.filepreparator.translations;
+
+/**
+ * Returns translation from Cache if present, otherwise translates with delegate and puts result to Cache.
+ */
+public class CachingTranslator implements Translator {
+
+    private final Cache cache;
+    private final Translator delegate;
+
+    public CachingTranslator(Cache cache, Translator delegate) {
+        this.cache = cache;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String translate(String fromLanguage, String toLanguage, String source) {
+        String cached = cache.get(fromLanguage, toLanguage, source);
+        if (cached != null && cached.trim().length() > 0) {
+            return cached;
+        }
+
+        String result = delegate.translate(fromLanguage, toLanguage, source);
+        cache.put(fromLanguage, toLanguage, source, result);
+        return result;
+    }
+}
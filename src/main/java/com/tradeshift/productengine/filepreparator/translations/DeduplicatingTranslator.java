@@ -0,0 +1,75 @@
+package com.tradeshift.productengine.filepreparator.translations;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single flight: concurrent calls with the same languages pair and source share one call to delegate.
+ * Key is released when the call completes, so wrap CachingTranslator to make later calls hit the cache.
+ */
+public class DeduplicatingTranslator implements Translator {
+
+    private final Translator delegate;
+    private final ConcurrentMap<Key, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    public DeduplicatingTranslator(Translator delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String translate(String fromLanguage, String toLanguage, String source) {
+        Key key = new Key(fromLanguage, toLanguage, source);
+        CompletableFuture<String> own = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, own);
+
+        if (existing != null) {
+            coalescedCount.incrementAndGet();
+            return await(existing);
+        }
+
+        try {
+            String result = delegate.translate(fromLanguage, toLanguage, source);
+            own.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    private static String await(CompletableFuture<String> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * @return count of calls which waited for the same in flight call instead of calling delegate
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class Key {
+        private String fromLanguage, toLanguage, source;
+    }
+}
@@ -0,0 +1,81 @@
+package com.tradeshift.productengine.filepreparator.translations;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free latency histogram with power of two millisecond buckets: bucket 0 counts latencies below 1 ms,
+ * bucket i latencies from 2^(i-1) to 2^i ms. Percentiles are upper bounds of buckets, so they are exact within 2x,
+ * which is enough to tell 200 ms from 2 s translations.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 32;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        long millis = nanos / 1000000;
+        int bucket = Math.min(64 - Long.numberOfLeadingZeros(millis), BUCKETS - 1);
+        counts.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public double getMeanMillis() {
+        long n = count.get();
+        return n == 0 ? 0 : totalNanos.get() / 1000000.0 / n;
+    }
+
+    public double getMaxMillis() {
+        return maxNanos.get() / 1000000.0;
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     * @return upper bound of bucket with the percentile, in ms
+     */
+    public long getPercentileMillis(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(n * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return 1L << i;
+            }
+        }
+        return 1L << (BUCKETS - 1);
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("count", getCount());
+        result.put("meanMillis", getMeanMillis());
+        result.put("p50Millis", getPercentileMillis(50));
+        result.put("p90Millis", getPercentileMillis(90));
+        result.put("p99Millis", getPercentileMillis(99));
+        result.put("maxMillis", getMaxMillis());
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count: %d, mean ms: %.1f, p50 ms: <%d, p90 ms: <%d, p99 ms: <%d, max ms: %.1f",
+                getCount(), getMeanMillis(), getPercentileMillis(50), getPercentileMillis(90),
+                getPercentileMillis(99), getMaxMillis());
+    }
+}
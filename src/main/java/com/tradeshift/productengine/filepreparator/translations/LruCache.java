@@ -0,0 +1,49 @@
+package com.tradeshift.productengine.filepreparator.translations;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * Thread safe in-heap LRU map bounded by total weight of entries, e.g. chars count.
+ */
+public class LruCache<K, V> {
+
+    private final LinkedHashMap<K, V> map = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxWeight;
+    private final ToLongBiFunction<K, V> weigher;
+    private long weight;
+
+    public LruCache(long maxWeight, ToLongBiFunction<K, V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    public synchronized V get(K key) {
+        return map.get(key);
+    }
+
+    public synchronized void put(K key, V value) {
+        V previous = map.put(key, value);
+        if (previous != null) {
+            weight -= weigher.applyAsLong(key, previous);
+        }
+        weight += weigher.applyAsLong(key, value);
+
+        Iterator<Map.Entry<K, V>> eldest = map.entrySet().iterator();
+        while (weight > maxWeight && eldest.hasNext()) {
+            Map.Entry<K, V> entry = eldest.next();
+            weight -= weigher.applyAsLong(entry.getKey(), entry.getValue());
+            eldest.remove();
+        }
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+}
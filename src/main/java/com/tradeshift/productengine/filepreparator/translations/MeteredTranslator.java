@@ -0,0 +1,73 @@
+package com.tradeshift.productengine.filepreparator.translations;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures latency of delegate per languages pair and counts translated and failed strings, and skipped ones
+ * by reason.
+ * Put it under CachingTranslator to measure only strings which really go to translation.
+ */
+public class MeteredTranslator implements Translator {
+
+    private final Translator delegate;
+    private final ConcurrentMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final AtomicLong translatedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final ConcurrentMap<TranslationSkippedException.Reason, AtomicLong> skippedCounts =
+            new ConcurrentHashMap<>();
+
+    public MeteredTranslator(Translator delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String translate(String fromLanguage, String toLanguage, String source) {
+        long start = System.nanoTime();
+        String result;
+        try {
+            result = delegate.translate(fromLanguage, toLanguage, source);
+        } catch (TranslationSkippedException e) {
+            failedCount.incrementAndGet();
+            skippedCounts.computeIfAbsent(e.getReason(), reason -> new AtomicLong()).incrementAndGet();
+            throw e;
+        } catch (RuntimeException e) {
+            failedCount.incrementAndGet();
+            throw e;
+        }
+        latencies.computeIfAbsent(SeleniumWrapper.languagePair(fromLanguage, toLanguage), pair -> new LatencyHistogram())
+                .record(System.nanoTime() - start);
+        translatedCount.incrementAndGet();
+        return result;
+    }
+
+    public long getTranslatedCount() {
+        return translatedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * @return failed strings which can be skipped, by reason
+     */
+    public Map<TranslationSkippedException.Reason, Long> getSkippedCounts() {
+        Map<TranslationSkippedException.Reason, Long> result = new EnumMap<>(TranslationSkippedException.Reason.class);
+        for (Map.Entry<TranslationSkippedException.Reason, AtomicLong> entry : skippedCounts.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+
+    /**
+     * @return histograms by languages pair, sorted by pair
+     */
+    public Map<String, LatencyHistogram> getLatencies() {
+        return new TreeMap<>(latencies);
+    }
+}
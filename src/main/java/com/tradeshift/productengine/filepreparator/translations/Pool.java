@@ -2,64 +2,472 @@ package com.tradeshift.productengine.filepreparator.translations;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 
+/**
+ * Free elements are kept in queues by affinity key, e.g. languages pair of opened page.
+ * take(key) prefers a free element with the same key, then creates a new one while under maxCount,
+ * and only then takes a free element with another key.
+ *
+ * Waiting threads are served in FIFO order. Elements are validated on take and on setFree, invalid elements and
+ * elements older than maxAgeMillis are evicted and closed, and their place is taken by new elements.
+ * Elements are created without holding the pool lock, so slow creation does not block other threads,
+ * and warmUp creates all of them in parallel.
+ */
 public class Pool<T extends Closeable> implements Closeable {
 
-    private final ConcurrentLinkedQueue<T> elements = new ConcurrentLinkedQueue<>();
+    private static final String NO_KEY = "";
 
-    private final List<T> allElements = new ArrayList<>();
+    private final Map<String, Deque<T>> elements = new HashMap<>();
+
+    private final Map<T, Long> allElements = new IdentityHashMap<>();
+
+    private final Deque<Condition> waiters = new ArrayDeque<>();
+
+    private final ReentrantLock lock = new ReentrantLock(true);
 
     private final int maxCount;
 
     private final Supplier<T> supplier;
 
+    private final Function<T, String> affinity;
+
+    private final Predicate<T> validator;
+
+    private final long maxAgeMillis;
+
+    private int idleCount;
+
+    private int creatingCount;
+
+    private long affinityHits;
+
+    private long affinityMisses;
+
+    private long createdCount;
+
+    private long evictedCount;
+
+    private boolean closed;
+
+    private final AtomicLong takeCount = new AtomicLong();
+
+    private final AtomicLong waitNanos = new AtomicLong();
+
     public Pool(int maxCount, Supplier<T> supplier) {
+        this(maxCount, supplier, t -> NO_KEY);
+    }
+
+    public Pool(int maxCount, Supplier<T> supplier, Function<T, String> affinity) {
+        this(maxCount, supplier, affinity, t -> true, 0);
+    }
+
+    /**
+     * @param maxAgeMillis elements older than that are replaced, 0 for no limit
+     */
+    public Pool(int maxCount, Supplier<T> supplier, Function<T, String> affinity, Predicate<T> validator,
+                long maxAgeMillis) {
         this.maxCount = maxCount;
         this.supplier = supplier;
+        this.affinity = affinity;
+        this.validator = validator;
+        this.maxAgeMillis = maxAgeMillis;
     }
 
     public T take() {
-        T result;
-        while (true) {
-            result = elements.poll();
-            if (result != null) {
-                return result;
+        return take(NO_KEY);
+    }
+
+    public T take(String key) {
+        return take(key, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return element or null if none got free in timeout
+     * @throws IllegalStateException if interrupted or pool is closed
+     */
+    public T take(String key, long timeout, TimeUnit unit) {
+        long start = System.nanoTime();
+        long deadline = timeout == Long.MAX_VALUE ? Long.MAX_VALUE : start + unit.toNanos(timeout);
+        try {
+            while (true) {
+                Borrowed<T> borrowed = acquire(key, deadline);
+                if (borrowed == null) {
+                    return null;
+                }
+                if (borrowed.element == null) {
+                    return create();
+                }
+                if (isValid(borrowed.element)) {
+                    return borrowed.element;
+                }
+                evict(borrowed.element);
+            }
+        } finally {
+            takeCount.incrementAndGet();
+            waitNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    private Borrowed<T> acquire(String key, long deadline) {
+        Condition self = null;
+        lock.lock();
+        try {
+            while (true) {
+                if (closed) {
+                    throw new IllegalStateException("Pool is closed");
+                }
+                if (self == null ? waiters.isEmpty() : waiters.peekFirst() == self) {
+                    Borrowed<T> result = poll(key);
+                    if (result != null) {
+                        if (self != null) {
+                            waiters.pollFirst();
+                        }
+                        signalHead();
+                        return result;
+                    }
+                }
+                if (self == null) {
+                    self = lock.newCondition();
+                    waiters.addLast(self);
+                }
+                try {
+                    if (deadline == Long.MAX_VALUE) {
+                        self.await();
+                    } else {
+                        long nanos = deadline - System.nanoTime();
+                        if (nanos <= 0 || self.awaitNanos(nanos) <= 0 && waiters.peekFirst() != self) {
+                            leave(self);
+                            return null;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    leave(self);
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for pool element", e);
+                }
             }
-            synchronized (this) {
-                if (allElements.size() < maxCount) {
-                    result = supplier.get();
-                    allElements.add(result);
-                    return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Borrowed<T> poll(String key) {
+        T result = poll(elements.get(key));
+        if (result != null) {
+            affinityHits++;
+            return new Borrowed<>(result);
+        }
+        if (allElements.size() + creatingCount < maxCount) {
+            creatingCount++;
+            return new Borrowed<>(null);
+        }
+        Iterator<Deque<T>> free = elements.values().iterator();
+        while (result == null && free.hasNext()) {
+            result = poll(free.next());
+        }
+        if (result != null) {
+            affinityMisses++;
+            return new Borrowed<>(result);
+        }
+        return null;
+    }
+
+    /**
+     * Creates element for slot reserved by creatingCount, outside of lock.
+     */
+    private T create() {
+        T result = null;
+        try {
+            result = supplier.get();
+            return result;
+        } finally {
+            lock.lock();
+            try {
+                creatingCount--;
+                if (result != null) {
+                    allElements.put(result, System.currentTimeMillis());
+                    createdCount++;
+                } else {
+                    signalHead();
                 }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Creates all missing elements in parallel and sets them free, so the first takes do not wait for creation.
+     *
+     * @param initializer is called for every new element before it is set free, e.g. to open most used page.
+     *                    Elements it fails on are evicted.
+     */
+    public void warmUp(Consumer<T> initializer) {
+        int count;
+        lock.lock();
+        try {
+            count = maxCount - allElements.size() - creatingCount;
+            creatingCount += Math.max(count, 0);
+        } finally {
+            lock.unlock();
+        }
+        if (count <= 0) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(count);
+        try {
+            List<Future<?>> futures = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                futures.add(executor.submit(() -> {
+                    T t = create();
+                    try {
+                        initializer.accept(t);
+                    } catch (RuntimeException e) {
+                        // element may be half initialized, its place is taken by a new one on demand
+                        evict(t);
+                        throw e;
+                    }
+                    setFree(t);
+                }));
+            }
+            for (Future<?> future : futures) {
                 try {
-                    this.wait();
-                } catch (InterruptedException ignore) {}
+                    future.get();
+                } catch (ExecutionException e) {
+                    System.out.println("Failed to warm up pool element: " + e.getCause());
+                }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } finally {
+            executor.shutdown();
+        }
+        System.out.println("Pool warmed up, elements: " + getAll().size() + ", took ms: "
+                + (System.currentTimeMillis() - start));
+    }
+
+    private T poll(Deque<T> free) {
+        T result = free == null ? null : free.pollFirst();
+        if (result != null) {
+            idleCount--;
+        }
+        return result;
+    }
+
+    private void leave(Condition self) {
+        boolean wasHead = waiters.peekFirst() == self;
+        waiters.remove(self);
+        if (wasHead) {
+            signalHead();
+        }
+    }
+
+    private void signalHead() {
+        Condition head = waiters.peekFirst();
+        if (head != null) {
+            head.signal();
         }
     }
 
     public void setFree(T t) {
-        synchronized (this) {
-            if (!allElements.contains(t)) {
+        if (!isValid(t)) {
+            evict(t);
+            return;
+        }
+        lock.lock();
+        try {
+            if (!allElements.containsKey(t)) {
                 throw new IllegalStateException("Can not set free not initial object");
             }
-            elements.add(t);
-            this.notify();
+            String key = affinity.apply(t);
+            elements.computeIfAbsent(key == null ? NO_KEY : key, k -> new ArrayDeque<>()).addLast(t);
+            idleCount++;
+            signalHead();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isValid(T t) {
+        if (maxAgeMillis > 0) {
+            Long created;
+            lock.lock();
+            try {
+                created = allElements.get(t);
+            } finally {
+                lock.unlock();
+            }
+            if (created != null && System.currentTimeMillis() - created > maxAgeMillis) {
+                return false;
+            }
+        }
+        try {
+            return validator.test(t);
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Removes taken element from pool and closes it, new element will be created instead on demand.
+     */
+    public void evict(T t) {
+        lock.lock();
+        try {
+            if (allElements.remove(t) == null) {
+                throw new IllegalStateException("Can not evict not initial object");
+            }
+            evictedCount++;
+            signalHead();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            t.close();
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Failed to close evicted pool element: " + e);
         }
     }
 
     public List<T> getAll() {
-        return new ArrayList<T>(allElements);
+        lock.lock();
+        try {
+            return new ArrayList<T>(allElements.keySet());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return count of taken elements
+     */
+    public int getActiveCount() {
+        lock.lock();
+        try {
+            return allElements.size() - idleCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getIdleCount() {
+        lock.lock();
+        try {
+            return idleCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getWaitingCount() {
+        lock.lock();
+        try {
+            return waiters.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getCreatedCount() {
+        lock.lock();
+        try {
+            return createdCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getEvictedCount() {
+        lock.lock();
+        try {
+            return evictedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return count of take calls served by free element with requested key
+     */
+    public long getAffinityHits() {
+        lock.lock();
+        try {
+            return affinityHits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return count of take calls served by free element with another key
+     */
+    public long getAffinityMisses() {
+        lock.lock();
+        try {
+            return affinityMisses;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getTakeCount() {
+        return takeCount.get();
+    }
+
+    /**
+     * @return total time spent in take, including waiting for free element and creating new ones
+     */
+    public long getWaitNanos() {
+        return waitNanos.get();
     }
 
     @Override
     public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            for (Condition waiter : waiters) {
+                waiter.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
         for (T t : getAll()) {
             t.close();
         }
     }
+
+    /**
+     * Free element, or null element if slot is reserved for creating a new one.
+     */
+    private static class Borrowed<T> {
+        private final T element;
+
+        Borrowed(T element) {
+            this.element = element;
+        }
+    }
 }
@@ -0,0 +1,99 @@
+package com.tradeshift.productengine.filepreparator.translations;
+
+import org.openqa.selenium.WebDriverException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Translates in browser, taking SeleniumWrapper from pool for every call.
+ * Pool should be created with SeleniumWrapper::getLanguagePair affinity, so the page for pair is reused,
+ * and SeleniumWrapper::isAlive validator, so browsers which failed are replaced.
+ */
+public class SeleniumTranslator implements Translator {
+
+    private final Pool<SeleniumWrapper> seleniumWrapperPool;
+    private final long resultTimeoutMillis;
+    private final SeleniumWrapper.ResultWait resultWait;
+    private final long takeTimeoutMillis;
+
+    /**
+     * @param takeTimeoutMillis how long to wait for free browser before TranslationSkippedException
+     */
+    public SeleniumTranslator(Pool<SeleniumWrapper> seleniumWrapperPool, long resultTimeoutMillis,
+                              SeleniumWrapper.ResultWait resultWait, long takeTimeoutMillis) {
+        this.seleniumWrapperPool = seleniumWrapperPool;
+        this.resultTimeoutMillis = resultTimeoutMillis;
+        this.resultWait = resultWait;
+        this.takeTimeoutMillis = takeTimeoutMillis;
+    }
+
+    /**
+     * Browser failure is retried once on another browser, as the failed one is evicted by validator. If retry
+     * fails too, translation is skipped with TranslationSkippedException.
+     */
+    @Override
+    public String translate(String fromLanguage, String toLanguage, String source) {
+        try {
+            return translateOnce(fromLanguage, toLanguage, source);
+        } catch (WebDriverException e) {
+            System.out.println("Browser failed on " + fromLanguage + "->" + toLanguage + ", retrying: "
+                    + e.getClass().getSimpleName());
+        }
+        try {
+            return translateOnce(fromLanguage, toLanguage, source);
+        } catch (WebDriverException e) {
+            throw new TranslationSkippedException(TranslationSkippedException.Reason.BROWSER_FAILED,
+                    "Browser failed twice on " + fromLanguage + "->" + toLanguage, null, e);
+        }
+    }
+
+    private String translateOnce(String fromLanguage, String toLanguage, String source) {
+        SeleniumWrapper seleniumWrapper = seleniumWrapperPool.take(SeleniumWrapper.languagePair(fromLanguage, toLanguage),
+                takeTimeoutMillis, TimeUnit.MILLISECONDS);
+        if (seleniumWrapper == null) {
+            throw new TranslationSkippedException(TranslationSkippedException.Reason.NO_FREE_BROWSER,
+                    "No free browser in " + takeTimeoutMillis + " ms", null);
+        }
+        try {
+            return seleniumWrapper.translate(fromLanguage, toLanguage, source, resultTimeoutMillis, resultWait);
+        } finally {
+            seleniumWrapperPool.setFree(seleniumWrapper);
+        }
+    }
+
+    /**
+     * @return page loads of all browsers, with reloads avoided by pool affinity and its misses
+     */
+    public String getStats() {
+        return "page loads: " + getPageLoads() + ", reloads avoided: " + getReloadsAvoided()
+                + ", pool affinity misses: " + seleniumWrapperPool.getAffinityMisses()
+                + ", browsers created: " + seleniumWrapperPool.getCreatedCount()
+                + ", evicted: " + seleniumWrapperPool.getEvictedCount()
+                + ", pool wait ms: " + getPoolWaitMillis();
+    }
+
+    /**
+     * @return page loads of current browsers, loads of evicted browsers are not counted
+     */
+    public long getPageLoads() {
+        long result = 0;
+        for (SeleniumWrapper seleniumWrapper : seleniumWrapperPool.getAll()) {
+            result += seleniumWrapper.getPageLoads();
+        }
+        return result;
+    }
+
+    /**
+     * @return takes served by a free browser which already had the page for the pair open, thanks to pool affinity
+     */
+    public long getReloadsAvoided() {
+        return seleniumWrapperPool.getAffinityHits();
+    }
+
+    /**
+     * @return total time translations waited for free browser
+     */
+    public long getPoolWaitMillis() {
+        return seleniumWrapperPool.getWaitNanos() / 1000000;
+    }
+}
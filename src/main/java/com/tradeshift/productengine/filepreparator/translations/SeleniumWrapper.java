@@ -1,19 +1,82 @@
 package com.tradeshift.productengine.filepreparator.translations;
 
 import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.chrome.ChromeDriver;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class SeleniumWrapper implements Closeable {
 
+    public enum ResultWait {
+        /**
+         * Read result every 100 ms until two reads match, return last read result on timeout.
+         */
+        POLLING,
+        /**
+         * MutationObserver on result box reports the result once it settles, TranslationSkippedException on timeout.
+         */
+        OBSERVER
+    }
+
+    static final long SETTLE_MILLIS = 50;
+
+    /**
+     * Path to chromedriver, DEFAULT_CHROME_DRIVER unless set before.
+     */
+    public static final String CHROME_DRIVER_PROPERTY = "webdriver.chrome.driver";
+    static final String DEFAULT_CHROME_DRIVER = "/home/pkonstantinov/bin/chromedriver";
+
+    /**
+     * Calls back with {text} when result box text differs from arguments[0] (or changed at all) and did not change
+     * for arguments[2] ms, or with {timeout, text} after arguments[1] ms.
+     */
+    private static final String WAIT_RESULT_SCRIPT = ""
+            + "var start = arguments[0], timeout = arguments[1], settle = arguments[2];"
+            + "var done = arguments[arguments.length - 1];"
+            + "var box = document.getElementById('result_box');"
+            + "var observer = null, settleTimer = null, mutated = false;"
+            + "function text() { return box ? box.innerText : ''; }"
+            + "function finish(result) {"
+            + "  if (observer) { observer.disconnect(); }"
+            + "  clearTimeout(settleTimer); clearTimeout(deadline); done(result);"
+            + "}"
+            + "function check() {"
+            + "  var current = text();"
+            + "  if ((current !== start || mutated) && current.trim().length > 0 && current.indexOf('...') < 0) {"
+            + "    finish({text: current});"
+            + "  }"
+            + "}"
+            + "var deadline = setTimeout(function () { finish({timeout: true, text: text()}); }, timeout);"
+            + "if (box) {"
+            + "  observer = new MutationObserver(function () {"
+            + "    mutated = true; clearTimeout(settleTimer); settleTimer = setTimeout(check, settle);"
+            + "  });"
+            + "  observer.observe(box, {childList: true, subtree: true, characterData: true});"
+            + "  settleTimer = setTimeout(check, settle);"
+            + "}";
+
     private final WebDriver driver;
 
+    private volatile String languagePair;
+    private volatile boolean broken;
+    private final AtomicLong pageLoads = new AtomicLong();
+    /**
+     * Script timeout set in driver, as setting it is a round trip to browser. Wrapper is used by one thread at a time.
+     */
+    private long scriptTimeoutMillis = -1;
+
     static {
-        System.setProperty("webdriver.chrome.driver", "/home/pkonstantinov/bin/chromedriver");
+        if (System.getProperty(CHROME_DRIVER_PROPERTY) == null) {
+            System.setProperty(CHROME_DRIVER_PROPERTY, DEFAULT_CHROME_DRIVER);
+        }
     }
 
     public SeleniumWrapper() {
@@ -21,12 +84,69 @@ public class SeleniumWrapper implements Closeable {
     }
 
     public void openTranslatePage(String langFrom, String langTo) {
+        String pair = languagePair(langFrom, langTo);
+        if (pair.equals(languagePair)) {
+            return;
+        }
         String url = String.format("https://translate.google.ru/#%s/%s", langFrom, langTo);
         if (!getUrl().contains(url)) {
             driver.get(url);
+            pageLoads.incrementAndGet();
+        }
+        languagePair = pair;
+    }
+
+    public static String languagePair(String langFrom, String langTo) {
+        return langFrom + "/" + langTo;
+    }
+
+    /**
+     * @return pair of languages opened page is for, or null if no page was opened
+     */
+    public String getLanguagePair() {
+        return languagePair;
+    }
+
+    public long getPageLoads() {
+        return pageLoads.get();
+    }
+
+    /**
+     * Opens page for languages pair if needed and waits up to upToMillis for translation of source.
+     */
+    public String translate(String langFrom, String langTo, String source, long upToMillis, ResultWait resultWait) {
+        try {
+            openTranslatePage(langFrom, langTo);
+            if (resultWait == ResultWait.OBSERVER) {
+                String startingResult = getResult();
+                setSource(source);
+                return waitForResultEvent(startingResult, upToMillis);
+            }
+            setSource(source);
+            if (source.indexOf('\n') < 0) {
+                return waitForResultChanged(upToMillis);
+            }
+            // stale result of a batch would be split and cached as translations of its lines
+            String result = pollResult(upToMillis);
+            if (result == null) {
+                throw new TranslationSkippedException(TranslationSkippedException.Reason.TIMEOUT,
+                        "Batch translation result did not change in " + upToMillis
+                        + " ms, page: " + languagePair, getResult());
+            }
+            return result;
+        } catch (WebDriverException e) {
+            broken = true;
+            throw e;
         }
     }
 
+    /**
+     * Cheap check without browser round trip: false once any driver call in translate failed.
+     */
+    public boolean isAlive() {
+        return !broken;
+    }
+
     public void setSource(String source) {
         WebElement webElement = driver.findElement(By.id("source"));
         webElement.clear();
@@ -47,6 +167,14 @@ public class SeleniumWrapper implements Closeable {
      * @return last read result
      */
     public String waitForResultChanged(long upToMillis) {
+        String result = pollResult(upToMillis);
+        return result != null ? result : getResult();
+    }
+
+    /**
+     * @return settled result, or null if it did not change in upToMillis
+     */
+    private String pollResult(long upToMillis) {
         String startingResult = getResult();
         String previousResult = startingResult;
         long waited = 0;
@@ -65,7 +193,33 @@ public class SeleniumWrapper implements Closeable {
             }
             previousResult = currentResult;
         } while (waited < upToMillis);
-        return getResult();
+        return null;
+    }
+
+    /**
+     * Waits for result box mutations in browser instead of polling it from here.
+     *
+     * @throws TranslationSkippedException if result did not settle in upToMillis
+     */
+    public String waitForResultEvent(String startingResult, long upToMillis) {
+        if (scriptTimeoutMillis != upToMillis + 1000) {
+            driver.manage().timeouts().setScriptTimeout(upToMillis + 1000, TimeUnit.MILLISECONDS);
+            scriptTimeoutMillis = upToMillis + 1000;
+        }
+        Object response = ((JavascriptExecutor) driver).executeAsyncScript(WAIT_RESULT_SCRIPT,
+                startingResult, upToMillis, SETTLE_MILLIS);
+
+        if (!(response instanceof Map)) {
+            throw new IllegalStateException("Unexpected result wait response: " + response);
+        }
+        Map<?, ?> result = (Map<?, ?>) response;
+        String text = String.valueOf(result.get("text"));
+        if (Boolean.TRUE.equals(result.get("timeout"))) {
+            throw new TranslationSkippedException(TranslationSkippedException.Reason.TIMEOUT,
+                    "Translation result did not change in " + upToMillis + " ms, page: "
+                    + languagePair, text);
+        }
+        return text;
     }
 
     public String getUrl() {
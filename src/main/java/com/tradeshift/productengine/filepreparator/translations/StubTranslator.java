@@ -0,0 +1,96 @@
+package com.tradeshift.productengine.filepreparator.translations;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+/**
+ * In-process translator for measuring without browser and network.
+ *
+ * Behaves like SeleniumTranslator: every call takes one of instancesCount sessions from Pool and holds it for
+ * latencyMillis, plus pageLoadMillis when session was used for another languages pair. Result is deterministic,
+ * every line of source is prefixed with target language, so batches can be split back.
+ *
+ * Every distinct line fails with errorRate probability, which lines fail is defined by seed, languages pair and
+ * line only, so it does not depend on thread scheduling or batching. Source with failing line is skipped with
+ * TranslationSkippedException, as a real translation which timed out.
+ */
+public class StubTranslator implements Translator, Closeable {
+
+    private final Pool<Session> sessionPool;
+    private final long latencyMillis;
+    private final long pageLoadMillis;
+    private final double errorRate;
+    private final long seed;
+
+    public StubTranslator(int instancesCount, long latencyMillis, long pageLoadMillis, double errorRate, long seed) {
+        this.sessionPool = new Pool<>(instancesCount, Session::new, session -> session.languagePair);
+        this.latencyMillis = latencyMillis;
+        this.pageLoadMillis = pageLoadMillis;
+        this.errorRate = errorRate;
+        this.seed = seed;
+    }
+
+    @Override
+    public String translate(String fromLanguage, String toLanguage, String source) {
+        String languagePair = SeleniumWrapper.languagePair(fromLanguage, toLanguage);
+        Session session = sessionPool.take(languagePair);
+        try {
+            long millis = latencyMillis;
+            if (!languagePair.equals(session.languagePair)) {
+                session.languagePair = languagePair;
+                millis += pageLoadMillis;
+            }
+            if (millis > 0) {
+                Thread.sleep(millis);
+            }
+            if (fails(languagePair, source)) {
+                throw new TranslationSkippedException(TranslationSkippedException.Reason.TIMEOUT,
+                        "Stub failure: " + fromLanguage + "->" + toLanguage, null);
+            }
+            return translateLines(toLanguage, source);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } finally {
+            sessionPool.setFree(session);
+        }
+    }
+
+    private boolean fails(String languagePair, String source) {
+        if (errorRate <= 0) {
+            return false;
+        }
+        for (String line : source.split(BatchingTranslator.DELIMITER, -1)) {
+            long key = (seed * 31 + languagePair.hashCode()) * 31 + line.hashCode();
+            if (new SplittableRandom(key).nextDouble() < errorRate) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String translateLines(String toLanguage, String source) {
+        StringBuilder result = new StringBuilder(source.length() + 8);
+        for (String line : source.split(BatchingTranslator.DELIMITER, -1)) {
+            if (result.length() > 0) {
+                result.append(BatchingTranslator.DELIMITER);
+            }
+            result.append('[').append(toLanguage).append("] ").append(line);
+        }
+        return result.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        sessionPool.close();
+    }
+
+    private static class Session implements Closeable {
+        private String languagePair;
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.tradeshift.productengine.filepreparator.translations;
+
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+import org.mapdb.Serializer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Stores string as UTF-8 bytes with packed length. Texts longer than compressAboveBytes are deflated,
+ * if that makes them shorter, so long descriptions take less space in file.
+ *
+ * Serializer is saved in db catalog, so compression setting stays with the db.
+ */
+class TextSerializer implements Serializer<String>, Serializable {
+
+    static final int DEFAULT_COMPRESS_ABOVE_BYTES = 256;
+    static final int NO_COMPRESSION = 0;
+
+    private static final long serialVersionUID = 1L;
+
+    private final int compressAboveBytes;
+
+    TextSerializer(int compressAboveBytes) {
+        this.compressAboveBytes = compressAboveBytes;
+    }
+
+    @Override
+    public void serialize(DataOutput out, String value) throws IOException {
+        writeText(out, value, compressAboveBytes);
+    }
+
+    @Override
+    public String deserialize(DataInput in, int available) throws IOException {
+        return readText(in);
+    }
+
+    @Override
+    public int fixedSize() {
+        return -1;
+    }
+
+    /**
+     * Writes packed (length << 1 | compressed flag), original length for compressed text, and bytes.
+     */
+    static void writeText(DataOutput out, String value, int compressAboveBytes) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (compressAboveBytes > NO_COMPRESSION && bytes.length > compressAboveBytes) {
+            byte[] compressed = deflate(bytes);
+            if (compressed.length < bytes.length) {
+                DataOutput2.packInt(out, compressed.length << 1 | 1);
+                DataOutput2.packInt(out, bytes.length);
+                out.write(compressed);
+                return;
+            }
+        }
+        DataOutput2.packInt(out, bytes.length << 1);
+        out.write(bytes);
+    }
+
+    static String readText(DataInput in) throws IOException {
+        int header = DataInput2.unpackInt(in);
+        byte[] bytes;
+        if ((header & 1) == 1) {
+            int length = DataInput2.unpackInt(in);
+            byte[] compressed = new byte[header >>> 1];
+            in.readFully(compressed);
+            bytes = inflate(compressed, length);
+        } else {
+            bytes = new byte[header >>> 1];
+            in.readFully(bytes);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length);
+            byte[] buffer = new byte[1024];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, int length) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] result = new byte[length];
+            int read = 0;
+            while (read < length && !inflater.finished()) {
+                int count = inflater.inflate(result, read, length - read);
+                if (count == 0 && inflater.needsInput()) {
+                    break;
+                }
+                read += count;
+            }
+            if (read != length) {
+                throw new IOException("Compressed text is truncated, expected bytes: " + length + ", got: " + read);
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.tradeshift.productengine.filepreparator.translations;
+
+/**
+ * Translation was not made and the string can be skipped, as another run may translate it. Reason tells timeouts
+ * apart from browser failures and pool starvation. Last read result is kept, it is most likely stale.
+ */
+public class TranslationSkippedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Reason {
+        /**
+         * Translation result did not appear in time.
+         */
+        TIMEOUT,
+        /**
+         * Browser failed, and failed again on retry.
+         */
+        BROWSER_FAILED,
+        /**
+         * No browser became free in time.
+         */
+        NO_FREE_BROWSER
+    }
+
+    private final Reason reason;
+    private final String lastResult;
+
+    public TranslationSkippedException(Reason reason, String message, String lastResult) {
+        this(reason, message, lastResult, null);
+    }
+
+    public TranslationSkippedException(Reason reason, String message, String lastResult, Throwable cause) {
+        super(reason + ": " + message, cause);
+        this.reason = reason;
+        this.lastResult = lastResult;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    public String getLastResult() {
+        return lastResult;
+    }
+}
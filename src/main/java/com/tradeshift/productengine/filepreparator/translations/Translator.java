@@ -0,0 +1,9 @@
+package com.tradeshift.productengine.filepreparator.translations;
+
+/**
+ * Translation backend. Implementations must be thread safe.
+ */
+public interface Translator {
+
+    String translate(String fromLanguage, String toLanguage, String source);
+}
@@ -0,0 +1,55 @@
+package com.tradeshift.productengine.filepreparator;
+
+import org.jsoup.Jsoup;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class DescriptionCleanerTest {
+
+    /**
+     * Whitespace Jsoup normalizes or keeps, chars it drops, quotes and non-ASCII letters.
+     */
+    private static final String ALPHABET = " \t\n\r\f\u000b\u00a0\u200b\u00ad\u0000\u0001\u0085\u3000\ufeff"
+            + "abcXYZ\u00e9\u4e2d\"'>=;/#x";
+    private static final String EMOJI = "\ud83d\ude00";
+    private static final String[] MARKUP = {"<b>x</b>", "&amp;", "<p>a</p> <br>", "&nbsp;", "&#8203;"};
+
+    @Test
+    public void cleansAsJsoupText() {
+        Random random = new Random(7);
+        for (int i = 0; i < 100000; i++) {
+            StringBuilder html = new StringBuilder();
+            int length = random.nextInt(12);
+            for (int j = 0; j < length; j++) {
+                if (random.nextInt(20) == 0) {
+                    html.append(EMOJI);
+                } else {
+                    html.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+                }
+            }
+            if (random.nextInt(10) == 0) {
+                html.insert(random.nextInt(html.length() + 1), MARKUP[random.nextInt(MARKUP.length)]);
+            }
+            String source = html.toString();
+            assertEquals(escape(source), escape(Jsoup.parse(source).text()), escape(DescriptionCleaner.clean(source)));
+        }
+    }
+
+    @Test
+    public void keepsTextWithoutChangesAsIs() {
+        String text = "Plain description";
+        assertSame(text, DescriptionCleaner.clean(text));
+    }
+
+    private static String escape(String text) {
+        StringBuilder result = new StringBuilder();
+        for (char c : text.toCharArray()) {
+            result.append(c < 32 || c > 126 ? String.format("\\u%04x", (int) c) : String.valueOf(c));
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,72 @@
+package com.tradeshift.productengine.filepreparator;
+
+import au.com.bytecode.opencsv.CSVWriter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class ShardingTest {
+
+    private static final String[] HEADER = {"sku", "title"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void mergeCsvKeepsValuesAsWritten() throws IOException {
+        File first = write("first.csv",
+                new String[]{"a", "Say \"hi\""},
+                new String[]{"c", "C:\\temp\\ends with \\"});
+        File second = write("second.csv",
+                new String[]{"b", "two\nlines, \\\"quoted\\\""},
+                new String[]{"d", "\\n is not a newline"});
+
+        StringWriter merged = new StringWriter();
+        long rows;
+        try (CSVWriter csvWriter = new CSVWriter(merged)) {
+            rows = Sharding.mergeCsv(Arrays.asList(first, second), csvWriter);
+        }
+
+        StringWriter expected = new StringWriter();
+        try (CSVWriter csvWriter = new CSVWriter(expected)) {
+            csvWriter.writeNext(HEADER);
+            csvWriter.writeNext(new String[]{"a", "Say \"hi\""});
+            csvWriter.writeNext(new String[]{"b", "two\nlines, \\\"quoted\\\""});
+            csvWriter.writeNext(new String[]{"c", "C:\\temp\\ends with \\"});
+            csvWriter.writeNext(new String[]{"d", "\\n is not a newline"});
+        }
+        assertEquals(4, rows);
+        assertEquals(expected.toString(), merged.toString());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void mergeCsvRejectsUnsortedInput() throws IOException {
+        File unsorted = write("unsorted.csv", new String[]{"b", "B"}, new String[]{"a", "A"});
+        try (CSVWriter csvWriter = new CSVWriter(new StringWriter())) {
+            Sharding.mergeCsv(Arrays.asList(unsorted), csvWriter);
+        }
+    }
+
+    /**
+     * Writes shard output the way FeedWriter does.
+     */
+    private File write(String name, String[]... rows) throws IOException {
+        File file = folder.newFile(name);
+        try (CSVWriter csvWriter = new CSVWriter(new OutputStreamWriter(new FileOutputStream(file),
+                StandardCharsets.UTF_8))) {
+            csvWriter.writeNext(HEADER);
+            csvWriter.writeAll(Arrays.asList(rows));
+        }
+        return file;
+    }
+}